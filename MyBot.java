@@ -2,6 +2,7 @@ import hlt.GameMap;
 import hlt.Log;
 import hlt.Move;
 import hlt.Networking;
+import hlt.TurnScheduler;
 import strategy.AbstractStrategy;
 import strategy.StrategyFactory;
 
@@ -13,16 +14,23 @@ public class MyBot {
     public static void main(final String[] args) {
         final Networking networking = new Networking();
         final GameMap gameMap = networking.initialize("n1try-basic-v1.14");
+        final TurnScheduler scheduler = TurnScheduler.fromSystemProperties();
+        scheduler.setRecorder(Networking.getRecorder());
         List<Move> lastMoves = new LinkedList<>();
 
         AbstractStrategy currentStrategy = null;
 
         while (true) {
             networking.updateMap(gameMap);
+            scheduler.startTurn(gameMap, Networking.getFrameReader());
             currentStrategy = StrategyFactory.chooseStrategy(gameMap, lastMoves, currentStrategy);
-            Log.log(String.format("Choose %s.", currentStrategy.getClass().getSimpleName()));
+            currentStrategy.setScheduler(scheduler);
+            final AbstractStrategy strategy = currentStrategy;
+            Log.debug(() -> String.format("Choose %s.", strategy.getClass().getSimpleName()));
             lastMoves = currentStrategy.apply();
-            Networking.sendMoves(lastMoves);
+            Log.info(() -> gameMap.getNavigationCache().toString());
+            Log.info(() -> strategy.getNeighbourCache().toString());
+            scheduler.send(lastMoves);
         }
     }
 }
@@ -0,0 +1,56 @@
+package bench;
+
+import hlt.Constants;
+import hlt.Entity;
+import hlt.GameMap;
+import hlt.Planet;
+import hlt.Ship;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import utils.GameStateGenerator;
+
+/**
+ * A game from {@link GameStateGenerator} shared by the benchmarks, parameterised by total ship count
+ * over 4 players and map size.
+ * Queries start from {@link #probe}, the first ship of player 0, towards {@link #farPlanet}, the
+ * planet farthest from it.
+ */
+@State(Scope.Benchmark)
+public class MapState {
+	public static final long SEED = 42;
+	public static final int TURNS = 2;
+
+	@Param({"100", "1000", "6000"})
+	public int ships;
+
+	@Param({"240x160", "384x256"})
+	public String mapSize;
+
+	public int width;
+	public int height;
+	public byte[][] frames;
+	public GameMap gameMap;
+	public Ship probe;
+	public Planet farPlanet;
+
+	@Setup
+	public void setUp() {
+		String[] size = mapSize.split("x");
+		width = Integer.parseInt(size[0]);
+		height = Integer.parseInt(size[1]);
+		GameStateGenerator generator = new GameStateGenerator(SEED, ships / Constants.MAX_PLAYERS, width, height);
+		frames = generator.frames(TURNS);
+		gameMap = generator.map(0, 0);
+		gameMap.buildRoadmap();
+		probe = gameMap.getMyPlayer().getShipMap().valueAt(0);
+		double farthest = -1;
+		for (Entity planet : gameMap.getAllPlanets().values()) {
+			if (probe.getDistanceTo(planet) > farthest) {
+				farthest = probe.getDistanceTo(planet);
+				farPlanet = (Planet) planet;
+			}
+		}
+	}
+}
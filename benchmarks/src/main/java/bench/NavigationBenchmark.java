@@ -0,0 +1,36 @@
+package bench;
+
+import hlt.Constants;
+import hlt.Navigation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One navigation from the probe ship to the farthest planet, across the map.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NavigationBenchmark {
+
+	/** With the navigation cache emptied first, as on the first call of a turn. */
+	@Benchmark
+	public Object navigateShipToDock(MapState state) {
+		state.gameMap.getNavigationCache().invalidate();
+		return Navigation.navigateShipToDock(state.gameMap, state.probe, state.farPlanet, Constants.MAX_SPEED);
+	}
+
+	@Benchmark
+	public Object navigateShipToDockCached(MapState state) {
+		return Navigation.navigateShipToDock(state.gameMap, state.probe, state.farPlanet, Constants.MAX_SPEED);
+	}
+}
@@ -0,0 +1,83 @@
+package bench;
+
+import hlt.FrameParser;
+import hlt.FrameReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading a frame off the input channel, and decoding it into the map.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParsingBenchmark {
+	private FrameReader reader;
+	private final FrameParser parser = new FrameParser();
+	private int turn;
+
+	@Setup
+	public void setUp(MapState state) {
+		byte[] frame = state.frames[0];
+		byte[] line = new byte[frame.length + 1];
+		System.arraycopy(frame, 0, line, 0, frame.length);
+		line[frame.length] = '\n';
+		reader = new FrameReader(new RepeatingChannel(line), 64 * 1024);
+	}
+
+	@Benchmark
+	public int readFrame() throws IOException {
+		reader.readFrame();
+		return reader.getFrameLength();
+	}
+
+	/** Alternates between two consecutive turns, so every update sees all ships move. */
+	@Benchmark
+	public Object updateMap(MapState state) {
+		byte[] frame = state.frames[turn++ & 1];
+		return state.gameMap.updateMap(parser.reset(frame, frame.length));
+	}
+
+	// Yields the same bytes over and over, like an engine that never ends.
+	private static final class RepeatingChannel implements ReadableByteChannel {
+		private final byte[] bytes;
+		private int position;
+
+		RepeatingChannel(byte[] bytes) {
+			this.bytes = bytes;
+		}
+
+		@Override
+		public int read(ByteBuffer target) {
+			int count = Math.min(target.remaining(), bytes.length - position);
+			target.put(bytes, position, count);
+			position = (position + count) % bytes.length;
+			return count;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
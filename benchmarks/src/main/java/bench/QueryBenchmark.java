@@ -0,0 +1,39 @@
+package bench;
+
+import hlt.Collision;
+import hlt.Constants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spatial queries of the map from one ship.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBenchmark {
+
+	@Benchmark
+	public Object nearbyEntitiesByDistance(MapState state) {
+		return state.gameMap.nearbyEntitiesByDistance(state.probe);
+	}
+
+	@Benchmark
+	public Object objectsBetween(MapState state) {
+		return state.gameMap.objectsBetween(state.probe, state.farPlanet);
+	}
+
+	@Benchmark
+	public boolean segmentCircleIntersect(MapState state) {
+		return Collision.segmentCircleIntersect(state.probe, state.farPlanet, state.farPlanet, Constants.FORECAST_FUDGE_FACTOR);
+	}
+}
@@ -0,0 +1,69 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import sim.FrameWriter;
+import sim.Simulator;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns of the forward model on the generated game: turns without moves, where only weapons and
+ * production act, and turns where every ship moves out at its own angle and back on the next turn,
+ * so collision checks run for the whole fleet. Every invocation plays {@value #TURNS} turns from the
+ * generated state, so the fleets never drift far from it, and scores are per turn.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SimulatorBenchmark {
+	static final int TURNS = 4;
+
+	private final FrameWriter writer = new FrameWriter();
+	private Simulator simulator;
+	private int[] angles;
+
+	@Setup(Level.Invocation)
+	public void setUp(MapState state) {
+		byte[] frame = state.frames[0];
+		simulator = Simulator.fromFrame(state.width, state.height, frame, frame.length);
+		angles = new int[simulator.getShipCount()];
+		for (int ship = 0; ship < angles.length; ship++) angles[ship] = ship * 37 % 360;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TURNS)
+	public int idleTurn() {
+		for (int turn = 0; turn < TURNS; turn++) simulator.step();
+		return simulator.getShipCount();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TURNS)
+	public int movingTurn() {
+		for (int turn = 0; turn < TURNS; turn++) {
+			int reverse = turn % 2 * 180;
+			for (int ship = 0; ship < angles.length; ship++) simulator.thrust(ship, 2, angles[ship] + reverse);
+			simulator.step();
+		}
+		return simulator.getShipCount();
+	}
+
+	@Benchmark
+	public FrameWriter writeFrame() {
+		return simulator.writeFrame(writer);
+	}
+}
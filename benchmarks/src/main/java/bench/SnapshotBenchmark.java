@@ -0,0 +1,57 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import sim.GameSnapshot;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Branching the generated game: a bare fork, and a fork that moves ten ships spread over the fleet,
+ * which copies their leaves. The allocation rate of the GC profiler is the memory per branch.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SnapshotBenchmark {
+	private static final int MOVED_SHIPS = 10;
+
+	private GameSnapshot snapshot;
+	private int[] moved;
+
+	@Setup(Level.Trial)
+	public void setUp(MapState state) {
+		snapshot = GameSnapshot.of(state.gameMap);
+		moved = new int[MOVED_SHIPS];
+		int stride = Math.max(1, snapshot.getShipCount() / MOVED_SHIPS);
+		int ship = snapshot.nextShip(0);
+		for (int i = 0; i < MOVED_SHIPS; i++) {
+			moved[i] = ship;
+			for (int skip = 0; skip < stride && snapshot.nextShip(ship + 1) >= 0; skip++) ship = snapshot.nextShip(ship + 1);
+		}
+	}
+
+	@Benchmark
+	public GameSnapshot fork() {
+		return snapshot.fork();
+	}
+
+	@Benchmark
+	public GameSnapshot forkAndMove() {
+		GameSnapshot branch = snapshot.fork();
+		for (int ship : moved) branch.thrust(ship, 7, 90);
+		return branch;
+	}
+}
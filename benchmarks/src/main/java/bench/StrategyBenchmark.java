@@ -0,0 +1,62 @@
+package bench;
+
+import hlt.FrameParser;
+import hlt.Log;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import strategy.AbstractStrategy;
+import strategy.AggressiveStrategy;
+import strategy.BalancedStrategy;
+import strategy.MiningStrategy;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A full turn of each strategy, including collision resolution, for a fresh strategy on a freshly
+ * updated map, so every invocation starts from the same state.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StrategyBenchmark {
+	@Param({"balanced", "aggressive", "mining"})
+	public String strategy;
+
+	private final FrameParser parser = new FrameParser();
+	private AbstractStrategy instance;
+
+	@Setup(Level.Trial)
+	public void silenceLog() {
+		Log.setLevel(Log.Level.OFF);
+	}
+
+	@Setup(Level.Invocation)
+	public void setUp(MapState state) {
+		byte[] frame = state.frames[0];
+		state.gameMap.updateMap(parser.reset(frame, frame.length));
+		switch (strategy) {
+			case "aggressive": instance = new AggressiveStrategy(state.gameMap); break;
+			case "mining": instance = new MiningStrategy(state.gameMap); break;
+			default: instance = new BalancedStrategy(state.gameMap);
+		}
+	}
+
+	@Benchmark
+	public List<?> apply() {
+		return instance.apply();
+	}
+}
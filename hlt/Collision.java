@@ -11,16 +11,20 @@ public class Collision {
      * @return true if the segment intersects, false otherwise
      */
     public static boolean segmentCircleIntersect(final Position start, final Position end, final Entity circle, final double fudge) {
+        return segmentCircleIntersect(start.getXPos(), start.getYPos(), end.getXPos(), end.getYPos(),
+                                      circle.getXPos(), circle.getYPos(), circle.getRadius(), fudge);
+    }
+
+    /**
+     * Same test as {@link #segmentCircleIntersect(Position, Position, Entity, double)} on plain coordinates.
+     */
+    public static boolean segmentCircleIntersect(final double startX, final double startY,
+                                                 final double endX, final double endY,
+                                                 final double centerX, final double centerY,
+                                                 final double circleRadius, final double fudge) {
         // Parameterize the segment as start + t * (end - start),
         // and substitute into the equation of a circle
         // Solve for t
-        final double circleRadius = circle.getRadius();
-        final double startX = start.getXPos();
-        final double startY = start.getYPos();
-        final double endX = end.getXPos();
-        final double endY = end.getYPos();
-        final double centerX = circle.getXPos();
-        final double centerY = circle.getYPos();
         final double dx = endX - startX;
         final double dy = endY - startY;
 
@@ -33,7 +37,7 @@ public class Collision {
 
         if (a == 0.0) {
             // Start and end are the same point
-            return start.getDistanceTo(circle) <= circleRadius + fudge;
+            return distance(startX, startY, centerX, centerY) <= circleRadius + fudge;
         }
 
         // Time along segment when closest to the circle (vertex of the quadratic)
@@ -44,11 +48,15 @@ public class Collision {
 
         final double closestX = startX + dx * t;
         final double closestY = startY + dy * t;
-        final double closestDistance = new Position(closestX, closestY).getDistanceTo(circle);
+        final double closestDistance = distance(closestX, closestY, centerX, centerY);
 
         return closestDistance <= circleRadius + fudge;
     }
 
+    private static double distance(final double x1, final double y1, final double x2, final double y2) {
+        return Math.sqrt(square(x1 - x2) + square(y1 - y2));
+    }
+
     public static double square(final double num) {
         return num * num;
     }
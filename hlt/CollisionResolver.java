@@ -0,0 +1,319 @@
+package hlt;
+
+import utils.IntObjectMap;
+import utils.IntSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Makes the moves planned for all of our ships in one turn free of collisions among themselves.
+ *
+ * Every ship moves along a straight line at constant speed during the turn, so two ships collide
+ * exactly when the closest approach of their relative motion over t in [0, 1] is below
+ * {@link Constants#SHIP_RADIUS} + {@link Constants#FORECAST_FUDGE_FACTOR}. Ships are binned by
+ * their start position into cells larger than two full moves, so only ships in neighbouring
+ * cells are ever tested against each other.
+ *
+ * Conflicts are resolved greedily in the order of the planned moves: a ship only yields to ships
+ * planned before it and to ships standing still. It tries alternatives, first turned headings at
+ * full thrust, then shorter moves, until it ends up standing still. Ships without a thrust move
+ * never change. Every adjustment only moves a ship further down its list of alternatives, so the
+ * pass always terminates, and a ship is touched only if it actually conflicts with another one.
+ */
+public class CollisionResolver {
+
+    private static final double COLLISION_DISTANCE = Constants.SHIP_RADIUS + Constants.FORECAST_FUDGE_FACTOR;
+    private static final double CELL_SIZE = 2 * (Constants.MAX_SPEED + COLLISION_DISTANCE);
+
+    // alternatives to a planned thrust move, tried in order; the last one stands still
+    private static final int[] ANGLE_OFFSETS = {0, 15, -15, 30, -30, 0, 45, -45, 60, -60, 0, 90, -90, 0};
+    private static final int[] THRUST_DIVISORS = {1, 1, 1, 1, 1, 2, 1, 1, 1, 1, 4, 1, 1, 0};
+    private static final int STAND_STILL = ANGLE_OFFSETS.length - 1;
+
+    private int count;
+    private Ship[] ships = new Ship[64];
+    private int[] moveIndex = new int[64];
+    private double[] startX = new double[64];
+    private double[] startY = new double[64];
+    private int[] baseAngle = new int[64];
+    private int[] baseThrust = new int[64];
+    private int[] candidate = new int[64];
+    private double[] velocityX = new double[64];
+    private double[] velocityY = new double[64];
+    private boolean[] queued = new boolean[64];
+
+    private int columns;
+    private int rows;
+    private int[] cellStart = new int[0];
+    private int[] cellEntries = new int[64];
+    private int[] cellOf = new int[64];
+
+    private final IntSet moving = new IntSet();
+    // lowest index that may be queued
+    private int cursor;
+
+    private long lastPairsTested;
+    private int lastAdjusted;
+    private long lastNanos;
+
+    /**
+     * @return the moves in the same order, with thrust moves replaced where needed to avoid
+     *         collisions between our own ships
+     */
+    public List<Move> resolve(final GameMap gameMap, final List<Move> moves) {
+        final long start = System.nanoTime();
+        lastPairsTested = 0;
+        lastAdjusted = 0;
+
+        collect(gameMap, moves);
+        buildGrid(gameMap);
+
+        cursor = 0;
+        for (int i = 0; i < count; ++i) {
+            enqueue(i);
+        }
+        for (int i = nextQueued(); i >= 0; i = nextQueued()) {
+            queued[i] = false;
+            if (!hasConflict(i)) {
+                continue;
+            }
+            adjust(gameMap, i);
+            // the new plan may get in the way of ships that were fine before
+            enqueueConflictingNeighbours(i);
+        }
+
+        final List<Move> resolved = new ArrayList<>(moves);
+        for (int i = 0; i < count; ++i) {
+            if (moveIndex[i] >= 0 && candidate[i] != 0) {
+                ++lastAdjusted;
+                resolved.set(moveIndex[i], toMove(i));
+            }
+        }
+        lastNanos = System.nanoTime() - start;
+        return resolved;
+    }
+
+    public long getLastPairsTested() {
+        return lastPairsTested;
+    }
+
+    /** Number of moves changed by the last {@link #resolve(GameMap, List)}. */
+    public int getLastAdjusted() {
+        return lastAdjusted;
+    }
+
+    public long getLastNanos() {
+        return lastNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CollisionResolver[ships=%d, pairs tested=%d, adjusted=%d, %d us]",
+                             count, lastPairsTested, lastAdjusted, lastNanos / 1000);
+    }
+
+    // Thrust moves come first in plan order, then every other ship of ours as a fixed obstacle.
+    private void collect(final GameMap gameMap, final List<Move> moves) {
+        count = 0;
+        moving.clear();
+        for (int m = 0; m < moves.size(); ++m) {
+            final Move move = moves.get(m);
+            if (move instanceof ThrustMove && ((ThrustMove) move).getThrust() > 0) {
+                final ThrustMove thrustMove = (ThrustMove) move;
+                add(move.getShip(), m, thrustMove.getAngle(), thrustMove.getThrust());
+                moving.add(move.getShip().getId());
+            }
+        }
+        final IntObjectMap<Ship> myShips = gameMap.getMyPlayer().getShipMap();
+        for (int s = 0; s < myShips.size(); ++s) {
+            if (!moving.contains(myShips.keyAt(s))) {
+                add(myShips.valueAt(s), -1, 0, 0);
+            }
+        }
+    }
+
+    private void add(final Ship ship, final int move, final int angle, final int thrust) {
+        if (count == ships.length) {
+            grow();
+        }
+        ships[count] = ship;
+        moveIndex[count] = move;
+        startX[count] = ship.getXPos();
+        startY[count] = ship.getYPos();
+        baseAngle[count] = angle;
+        baseThrust[count] = thrust;
+        queued[count] = false;
+        setCandidate(count, move >= 0 ? 0 : STAND_STILL);
+        ++count;
+    }
+
+    private void grow() {
+        final int capacity = ships.length * 2;
+        ships = Arrays.copyOf(ships, capacity);
+        moveIndex = Arrays.copyOf(moveIndex, capacity);
+        startX = Arrays.copyOf(startX, capacity);
+        startY = Arrays.copyOf(startY, capacity);
+        baseAngle = Arrays.copyOf(baseAngle, capacity);
+        baseThrust = Arrays.copyOf(baseThrust, capacity);
+        candidate = Arrays.copyOf(candidate, capacity);
+        velocityX = Arrays.copyOf(velocityX, capacity);
+        velocityY = Arrays.copyOf(velocityY, capacity);
+        queued = Arrays.copyOf(queued, capacity);
+        cellOf = Arrays.copyOf(cellOf, capacity);
+        cellEntries = Arrays.copyOf(cellEntries, capacity);
+    }
+
+    // Counting sort of all ships by the cell of their start position.
+    private void buildGrid(final GameMap gameMap) {
+        columns = (int) Math.ceil(gameMap.getWidth() / CELL_SIZE) + 1;
+        rows = (int) Math.ceil(gameMap.getHeight() / CELL_SIZE) + 1;
+        final int cells = columns * rows;
+        if (cellStart.length < cells + 1) {
+            cellStart = new int[cells + 1];
+        } else {
+            Arrays.fill(cellStart, 0, cells + 1, 0);
+        }
+        for (int i = 0; i < count; ++i) {
+            cellOf[i] = cell(startX[i], startY[i]);
+            ++cellStart[cellOf[i] + 1];
+        }
+        for (int c = 0; c < cells; ++c) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        for (int i = count - 1; i >= 0; --i) {
+            cellEntries[--cellStart[cellOf[i] + 1]] = i;
+        }
+        // cellStart[c + 1] now points at the start of cell c; shift back by one cell
+        System.arraycopy(cellStart, 1, cellStart, 0, cells);
+        cellStart[cells] = count;
+    }
+
+    private int cell(final double x, final double y) {
+        final int column = Math.min(columns - 1, Math.max(0, (int) (x / CELL_SIZE)));
+        final int row = Math.min(rows - 1, Math.max(0, (int) (y / CELL_SIZE)));
+        return row * columns + column;
+    }
+
+    // conflicts with ships that i has to yield to
+    private boolean hasConflict(final int i) {
+        final int column = cellOf[i] % columns;
+        final int row = cellOf[i] / columns;
+        for (int r = Math.max(0, row - 1); r <= Math.min(rows - 1, row + 1); ++r) {
+            for (int c = Math.max(0, column - 1); c <= Math.min(columns - 1, column + 1); ++c) {
+                final int cell = r * columns + c;
+                for (int e = cellStart[cell]; e < cellStart[cell + 1]; ++e) {
+                    final int j = cellEntries[e];
+                    if (j == i || !(j < i || candidate[j] == STAND_STILL)) {
+                        continue;
+                    }
+                    if (collide(i, velocityX[i], velocityY[i], j)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean collide(final int i, final double vxI, final double vyI, final int j) {
+        ++lastPairsTested;
+        final double px = startX[i] - startX[j];
+        final double py = startY[i] - startY[j];
+        final double vx = vxI - velocityX[j];
+        final double vy = vyI - velocityY[j];
+        final double speedSquared = vx * vx + vy * vy;
+        double t = 0;
+        if (speedSquared > 0) {
+            t = Math.max(0, Math.min(1, -(px * vx + py * vy) / speedSquared));
+        }
+        final double cx = px + vx * t;
+        final double cy = py + vy * t;
+        return cx * cx + cy * cy <= COLLISION_DISTANCE * COLLISION_DISTANCE;
+    }
+
+    // Moves the ship down its alternatives to the first one that conflicts with nobody.
+    private void adjust(final GameMap gameMap, final int i) {
+        for (int next = candidate[i] + 1; next < STAND_STILL; ++next) {
+            final int thrust = baseThrust[i] / THRUST_DIVISORS[next];
+            if (thrust == 0 || !isClearOfPlanets(gameMap, i, next, thrust)) {
+                continue;
+            }
+            setCandidate(i, next);
+            if (!hasConflict(i)) {
+                return;
+            }
+        }
+        setCandidate(i, STAND_STILL);
+    }
+
+    private boolean isClearOfPlanets(final GameMap gameMap, final int i, final int next, final int thrust) {
+        if (ANGLE_OFFSETS[next] == 0) {
+            // a shorter move along the planned heading stays on the planned path
+            return true;
+        }
+        final double angleRad = Math.toRadians(baseAngle[i] + ANGLE_OFFSETS[next]);
+        final double endX = startX[i] + thrust * Math.cos(angleRad);
+        final double endY = startY[i] + thrust * Math.sin(angleRad);
+        if (endX < 0 || endY < 0 || endX >= gameMap.getWidth() || endY >= gameMap.getHeight()) {
+            return false;
+        }
+        final IntObjectMap<Planet> planets = gameMap.getPlanetMap();
+        for (int p = 0; p < planets.size(); ++p) {
+            final Planet planet = planets.valueAt(p);
+            if (Collision.segmentCircleIntersect(startX[i], startY[i], endX, endY, planet.getXPos(), planet.getYPos(),
+                                                 planet.getRadius(), Constants.FORECAST_FUDGE_FACTOR)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void enqueueConflictingNeighbours(final int i) {
+        final int column = cellOf[i] % columns;
+        final int row = cellOf[i] / columns;
+        for (int r = Math.max(0, row - 1); r <= Math.min(rows - 1, row + 1); ++r) {
+            for (int c = Math.max(0, column - 1); c <= Math.min(columns - 1, column + 1); ++c) {
+                final int cell = r * columns + c;
+                for (int e = cellStart[cell]; e < cellStart[cell + 1]; ++e) {
+                    final int j = cellEntries[e];
+                    if (j != i && candidate[j] != STAND_STILL && collide(j, velocityX[j], velocityY[j], i)) {
+                        enqueue(j);
+                    }
+                }
+            }
+        }
+    }
+
+    private void enqueue(final int i) {
+        if (!queued[i] && candidate[i] != STAND_STILL) {
+            queued[i] = true;
+            cursor = Math.min(cursor, i);
+        }
+    }
+
+    // Ships are handled in plan order, so each one sees the final plans of the ships before it.
+    private int nextQueued() {
+        while (cursor < count && !queued[cursor]) {
+            ++cursor;
+        }
+        return cursor < count ? cursor : -1;
+    }
+
+    private void setCandidate(final int i, final int next) {
+        candidate[i] = next;
+        final int thrust = next == STAND_STILL ? 0 : baseThrust[i] / THRUST_DIVISORS[next];
+        final double angleRad = Math.toRadians(baseAngle[i] + ANGLE_OFFSETS[next]);
+        velocityX[i] = thrust * Math.cos(angleRad);
+        velocityY[i] = thrust * Math.sin(angleRad);
+    }
+
+    private Move toMove(final int i) {
+        if (candidate[i] == STAND_STILL) {
+            return new Move(Move.MoveType.Noop, ships[i]);
+        }
+        final int angle = Math.floorMod(baseAngle[i] + ANGLE_OFFSETS[candidate[i]], 360);
+        return new ThrustMove(ships[i], angle, baseThrust[i] / THRUST_DIVISORS[candidate[i]]);
+    }
+}
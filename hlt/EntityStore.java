@@ -0,0 +1,268 @@
+package hlt;
+
+import java.util.Arrays;
+
+/**
+ * Column store holding the state of every ship and planet of the current turn.
+ *
+ * Entities occupy dense slots in frame order: all ships first, then all planets. Each attribute
+ * lives in its own primitive array indexed by slot, so scans over positions touch contiguous
+ * memory. The {@link Ship} and {@link Planet} instances handed out to strategies are kept in
+ * {@link #entity(int)}, and entity ids map to slots through {@link #shipSlot(int)} and
+ * {@link #planetSlot(int)}.
+ */
+public class EntityStore {
+
+    public static final byte SHIP = 0;
+    public static final byte PLANET = 1;
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private int size;
+    private int shipCount;
+
+    private byte[] kind = new byte[INITIAL_CAPACITY];
+    private int[] id = new int[INITIAL_CAPACITY];
+    private int[] owner = new int[INITIAL_CAPACITY];
+    private double[] x = new double[INITIAL_CAPACITY];
+    private double[] y = new double[INITIAL_CAPACITY];
+    private double[] radius = new double[INITIAL_CAPACITY];
+    private int[] health = new int[INITIAL_CAPACITY];
+    private int[] dockingStatus = new int[INITIAL_CAPACITY];
+    private int[] dockedPlanet = new int[INITIAL_CAPACITY];
+    private int[] dockingProgress = new int[INITIAL_CAPACITY];
+    private int[] weaponCooldown = new int[INITIAL_CAPACITY];
+    private int[] dockingSpots = new int[INITIAL_CAPACITY];
+    private int[] currentProduction = new int[INITIAL_CAPACITY];
+    private int[] remainingProduction = new int[INITIAL_CAPACITY];
+    private int[] dockedShipCount = new int[INITIAL_CAPACITY];
+    private Entity[] entity = new Entity[INITIAL_CAPACITY];
+
+    // id -> slot, only valid where the stamp matches the current generation
+    private int generation;
+    private int[] shipSlotById = new int[INITIAL_CAPACITY];
+    private int[] shipStampById = new int[INITIAL_CAPACITY];
+    private int[] planetSlotById = new int[64];
+    private int[] planetStampById = new int[64];
+
+    void clear() {
+        Arrays.fill(entity, 0, size, null);
+        size = 0;
+        shipCount = 0;
+        ++generation;
+    }
+
+    int addShip(final int shipId, final int shipOwner, final double xPos, final double yPos, final int shipHealth,
+                final int status, final int planet, final int progress, final int cooldown) {
+        final int slot = nextSlot(SHIP, shipId, shipOwner, xPos, yPos, Constants.SHIP_RADIUS, shipHealth);
+        dockingStatus[slot] = status;
+        dockedPlanet[slot] = planet;
+        dockingProgress[slot] = progress;
+        weaponCooldown[slot] = cooldown;
+        dockingSpots[slot] = 0;
+        currentProduction[slot] = 0;
+        remainingProduction[slot] = 0;
+        dockedShipCount[slot] = 0;
+
+        if (shipId >= shipSlotById.length) {
+            final int length = Math.max(shipSlotById.length * 2, shipId + 1);
+            shipSlotById = Arrays.copyOf(shipSlotById, length);
+            shipStampById = Arrays.copyOf(shipStampById, length);
+        }
+        shipSlotById[shipId] = slot;
+        shipStampById[shipId] = generation;
+        ++shipCount;
+        return slot;
+    }
+
+    int addPlanet(final int planetId, final int planetOwner, final double xPos, final double yPos, final int planetHealth,
+                  final double planetRadius, final int spots, final int production, final int remaining,
+                  final int dockedShips) {
+        final int slot = nextSlot(PLANET, planetId, planetOwner, xPos, yPos, planetRadius, planetHealth);
+        dockingStatus[slot] = -1;
+        dockedPlanet[slot] = -1;
+        dockingProgress[slot] = 0;
+        weaponCooldown[slot] = 0;
+        dockingSpots[slot] = spots;
+        currentProduction[slot] = production;
+        remainingProduction[slot] = remaining;
+        dockedShipCount[slot] = dockedShips;
+
+        if (planetId >= planetSlotById.length) {
+            final int length = Math.max(planetSlotById.length * 2, planetId + 1);
+            planetSlotById = Arrays.copyOf(planetSlotById, length);
+            planetStampById = Arrays.copyOf(planetStampById, length);
+        }
+        planetSlotById[planetId] = slot;
+        planetStampById[planetId] = generation;
+        return slot;
+    }
+
+    void setEntity(final int slot, final Entity view) {
+        entity[slot] = view;
+    }
+
+    private int nextSlot(final byte entityKind, final int entityId, final int entityOwner,
+                         final double xPos, final double yPos, final double entityRadius, final int entityHealth) {
+        if (size == kind.length) {
+            grow();
+        }
+        final int slot = size++;
+        kind[slot] = entityKind;
+        id[slot] = entityId;
+        owner[slot] = entityOwner;
+        x[slot] = xPos;
+        y[slot] = yPos;
+        radius[slot] = entityRadius;
+        health[slot] = entityHealth;
+        return slot;
+    }
+
+    private void grow() {
+        final int capacity = kind.length * 2;
+        kind = Arrays.copyOf(kind, capacity);
+        id = Arrays.copyOf(id, capacity);
+        owner = Arrays.copyOf(owner, capacity);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        radius = Arrays.copyOf(radius, capacity);
+        health = Arrays.copyOf(health, capacity);
+        dockingStatus = Arrays.copyOf(dockingStatus, capacity);
+        dockedPlanet = Arrays.copyOf(dockedPlanet, capacity);
+        dockingProgress = Arrays.copyOf(dockingProgress, capacity);
+        weaponCooldown = Arrays.copyOf(weaponCooldown, capacity);
+        dockingSpots = Arrays.copyOf(dockingSpots, capacity);
+        currentProduction = Arrays.copyOf(currentProduction, capacity);
+        remainingProduction = Arrays.copyOf(remainingProduction, capacity);
+        dockedShipCount = Arrays.copyOf(dockedShipCount, capacity);
+        entity = Arrays.copyOf(entity, capacity);
+    }
+
+    /** Incremented on every update, so derived structures can tell whether they are stale. */
+    public int generation() {
+        return generation;
+    }
+
+    /** Number of occupied slots. */
+    public int size() {
+        return size;
+    }
+
+    public int shipCount() {
+        return shipCount;
+    }
+
+    /** First planet slot; ships occupy [0, firstPlanetSlot()). */
+    public int firstPlanetSlot() {
+        return shipCount;
+    }
+
+    /** @return the slot of the ship with the given id in the current turn, or -1 */
+    public int shipSlot(final int shipId) {
+        if (shipId < 0 || shipId >= shipSlotById.length || shipStampById[shipId] != generation) {
+            return -1;
+        }
+        return shipSlotById[shipId];
+    }
+
+    /** @return the slot of the planet with the given id in the current turn, or -1 */
+    public int planetSlot(final int planetId) {
+        if (planetId < 0 || planetId >= planetSlotById.length || planetStampById[planetId] != generation) {
+            return -1;
+        }
+        return planetSlotById[planetId];
+    }
+
+    /**
+     * @return the slot of the given entity if it is part of the current turn at exactly this position, or -1
+     */
+    public int slotOf(final Position position) {
+        final int slot;
+        if (position instanceof Ship) {
+            slot = shipSlot(((Ship) position).getId());
+        } else if (position instanceof Planet) {
+            slot = planetSlot(((Planet) position).getId());
+        } else {
+            return -1;
+        }
+        if (slot < 0 || x[slot] != position.getXPos() || y[slot] != position.getYPos()) {
+            return -1;
+        }
+        return slot;
+    }
+
+    public byte kind(final int slot) {
+        return kind[slot];
+    }
+
+    public boolean isShip(final int slot) {
+        return kind[slot] == SHIP;
+    }
+
+    public int id(final int slot) {
+        return id[slot];
+    }
+
+    public int owner(final int slot) {
+        return owner[slot];
+    }
+
+    public double x(final int slot) {
+        return x[slot];
+    }
+
+    public double y(final int slot) {
+        return y[slot];
+    }
+
+    public double radius(final int slot) {
+        return radius[slot];
+    }
+
+    public int health(final int slot) {
+        return health[slot];
+    }
+
+    /** Ordinal of {@link Ship.DockingStatus}, -1 for planets. */
+    public int dockingStatus(final int slot) {
+        return dockingStatus[slot];
+    }
+
+    public int dockedPlanet(final int slot) {
+        return dockedPlanet[slot];
+    }
+
+    public int dockingProgress(final int slot) {
+        return dockingProgress[slot];
+    }
+
+    public int weaponCooldown(final int slot) {
+        return weaponCooldown[slot];
+    }
+
+    public int dockingSpots(final int slot) {
+        return dockingSpots[slot];
+    }
+
+    public int currentProduction(final int slot) {
+        return currentProduction[slot];
+    }
+
+    public int remainingProduction(final int slot) {
+        return remainingProduction[slot];
+    }
+
+    public int dockedShipCount(final int slot) {
+        return dockedShipCount[slot];
+    }
+
+    public Entity entity(final int slot) {
+        return entity[slot];
+    }
+
+    public double distanceSquared(final int slot, final double xPos, final double yPos) {
+        final double dx = x[slot] - xPos;
+        final double dy = y[slot] - yPos;
+        return dx * dx + dy * dy;
+    }
+}
@@ -0,0 +1,152 @@
+package hlt;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes space-separated numbers straight from the raw bytes of an engine frame.
+ *
+ * Counterpart to {@link Metadata}/{@link MetadataParser} that neither splits the frame into
+ * strings nor boxes anything, so a parser instance can be reused for every turn of a game.
+ */
+public class FrameParser implements TokenSource {
+
+    // Powers of ten that are exactly representable as doubles.
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private byte[] bytes;
+    private int position;
+    private int limit;
+
+    public FrameParser reset(final byte[] bytes, final int length) {
+        this.bytes = bytes;
+        this.position = 0;
+        this.limit = length;
+        return this;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        skipWhitespace();
+        return position == limit;
+    }
+
+    @Override
+    public int nextInt() {
+        skipWhitespace();
+        final int start = position;
+        boolean negative = false;
+        if (position < limit && (bytes[position] == '-' || bytes[position] == '+')) {
+            negative = bytes[position] == '-';
+            ++position;
+        }
+
+        long value = 0;
+        final int digitsStart = position;
+        while (position < limit) {
+            final int digit = bytes[position] - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw malformed(start);
+            }
+            ++position;
+        }
+
+        if (position == digitsStart || !atTokenEnd()) {
+            throw malformed(start);
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw malformed(start);
+        }
+        return (int) value;
+    }
+
+    @Override
+    public double nextDouble() {
+        skipWhitespace();
+        final int start = position;
+        boolean negative = false;
+        if (position < limit && (bytes[position] == '-' || bytes[position] == '+')) {
+            negative = bytes[position] == '-';
+            ++position;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean exact = true;
+
+        for (; position < limit && isDigit(bytes[position]); ++position, ++digits) {
+            if (mantissa < MAX_EXACT_MANTISSA) {
+                mantissa = mantissa * 10 + (bytes[position] - '0');
+            } else {
+                exact = false;
+            }
+        }
+        if (position < limit && bytes[position] == '.') {
+            ++position;
+            for (; position < limit && isDigit(bytes[position]); ++position, ++digits) {
+                if (mantissa < MAX_EXACT_MANTISSA) {
+                    mantissa = mantissa * 10 + (bytes[position] - '0');
+                    --exponent;
+                } else if (bytes[position] != '0') {
+                    exact = false;
+                }
+            }
+        }
+        if (digits == 0) {
+            throw malformed(start);
+        }
+        if (position < limit && (bytes[position] == 'e' || bytes[position] == 'E')) {
+            // Rare enough that a slow path is fine.
+            exact = false;
+            while (position < limit && bytes[position] != ' ') {
+                ++position;
+            }
+        }
+        if (!atTokenEnd()) {
+            throw malformed(start);
+        }
+
+        if (!exact || mantissa > MAX_EXACT_MANTISSA || -exponent >= POWERS_OF_TEN.length) {
+            try {
+                return Double.parseDouble(new String(bytes, start, position - start, StandardCharsets.US_ASCII));
+            } catch (final NumberFormatException e) {
+                throw malformed(start);
+            }
+        }
+
+        final double value = exponent == 0 ? mantissa : mantissa / POWERS_OF_TEN[-exponent];
+        return negative ? -value : value;
+    }
+
+    private void skipWhitespace() {
+        while (position < limit && (bytes[position] == ' ' || bytes[position] == '\n' || bytes[position] == '\r')) {
+            ++position;
+        }
+    }
+
+    private boolean atTokenEnd() {
+        return position == limit || bytes[position] == ' ' || bytes[position] == '\n' || bytes[position] == '\r';
+    }
+
+    private static boolean isDigit(final byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private NumberFormatException malformed(final int start) {
+        int end = start;
+        while (end < limit && bytes[end] != ' ') {
+            ++end;
+        }
+        return new NumberFormatException("Malformed number at byte " + start + ": \""
+                + new String(bytes, start, end - start, StandardCharsets.US_ASCII) + "\"");
+    }
+}
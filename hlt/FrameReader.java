@@ -0,0 +1,193 @@
+package hlt;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads newline-terminated frames from the game engine in bulk.
+ *
+ * Bytes are pulled from a {@link ReadableByteChannel} into a reusable direct buffer and copied
+ * chunk-wise into a reusable frame array, which grows whenever a frame does not fit. Carriage
+ * returns are dropped, as they only show up when testing manually on Windows.
+ *
+ * The arrival of a frame is taken when a read that had to wait for it returns. A frame whose first
+ * bytes were already buffered, or already waiting in the channel, arrived some time before it was
+ * asked for; {@link #wasLastFrameWaiting()} tells the two cases apart.
+ */
+public class FrameReader {
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    /** A read returning faster than this found its bytes already waiting. */
+    private static final long WAITING_READ_NANOS = 200_000;
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer;
+
+    private byte[] frame;
+    private int frameLength;
+    private boolean endOfStream;
+
+    private long lastFrameBytes;
+    private long lastReadNanos;
+    private long lastArrivalNanos;
+    private boolean lastFrameWaiting;
+    private long fillStartNanos;
+    private long fillEndNanos;
+    private long totalFrameBytes;
+    private int frameCount;
+
+    public FrameReader(final InputStream in) {
+        this(Channels.newChannel(in), DEFAULT_BUFFER_SIZE);
+    }
+
+    public FrameReader(final ReadableByteChannel channel, final int bufferSize) {
+        this.channel = channel;
+        buffer = ByteBuffer.allocateDirect(bufferSize);
+        buffer.flip(); // start out empty, in read mode
+        frame = new byte[bufferSize];
+    }
+
+    /**
+     * Reads the next frame into the frame array.
+     *
+     * @return false if the stream ended before any byte of a new frame was read
+     */
+    public boolean readFrame() throws IOException {
+        final long start = System.nanoTime();
+        long rawBytes = 0;
+        boolean arrived = false;
+        frameLength = 0;
+
+        while (true) {
+            boolean filled = false;
+            if (!buffer.hasRemaining()) {
+                if (endOfStream || !fill()) {
+                    endOfStream = true;
+                    break;
+                }
+                filled = true;
+            }
+            if (!arrived) {
+                lastFrameWaiting = !filled || fillEndNanos - fillStartNanos < WAITING_READ_NANOS;
+                lastArrivalNanos = lastFrameWaiting ? start : fillEndNanos;
+                arrived = true;
+            }
+
+            final int begin = buffer.position();
+            final int limit = buffer.limit();
+            int end = begin;
+            while (end < limit && buffer.get(end) != '\n') {
+                ++end;
+            }
+
+            final int chunk = end - begin;
+            ensureCapacity(frameLength + chunk);
+            buffer.get(frame, frameLength, chunk);
+            frameLength = stripCarriageReturns(frame, frameLength, chunk);
+            rawBytes += chunk;
+
+            if (end < limit) {
+                // consume the newline itself
+                buffer.get();
+                ++rawBytes;
+                break;
+            }
+        }
+
+        lastReadNanos = System.nanoTime() - start;
+        lastFrameBytes = rawBytes;
+        if (rawBytes == 0 && endOfStream) {
+            return false;
+        }
+        totalFrameBytes += rawBytes;
+        ++frameCount;
+        return true;
+    }
+
+    /**
+     * Reads the next frame and decodes it. Only meant for the short pre-game lines.
+     */
+    public String readLine() throws IOException {
+        readFrame();
+        return new String(frame, 0, frameLength, StandardCharsets.US_ASCII);
+    }
+
+    public byte[] getFrame() {
+        return frame;
+    }
+
+    public int getFrameLength() {
+        return frameLength;
+    }
+
+    /** Bytes consumed from the channel for the last frame, including line terminators. */
+    public long getLastFrameBytes() {
+        return lastFrameBytes;
+    }
+
+    /** Wall-clock time spent in the last {@link #readFrame()} call, including waiting for the engine. */
+    public long getLastReadNanos() {
+        return lastReadNanos;
+    }
+
+    /**
+     * {@link System#nanoTime()} at which the first bytes of the last frame arrived, or, if they were
+     * already waiting, at which the frame was asked for.
+     */
+    public long getLastArrivalNanos() {
+        return lastArrivalNanos;
+    }
+
+    /** Whether the first bytes of the last frame were there before it was asked for, so it arrived earlier. */
+    public boolean wasLastFrameWaiting() {
+        return lastFrameWaiting;
+    }
+
+    public long getTotalFrameBytes() {
+        return totalFrameBytes;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    private boolean fill() throws IOException {
+        buffer.clear();
+        fillStartNanos = System.nanoTime();
+        int read;
+        do {
+            read = channel.read(buffer);
+        } while (read == 0);
+        fillEndNanos = System.nanoTime();
+        buffer.flip();
+        return read > 0;
+    }
+
+    private void ensureCapacity(final int required) {
+        if (required <= frame.length) {
+            return;
+        }
+        int newLength = frame.length * 2;
+        while (newLength < required) {
+            newLength *= 2;
+        }
+        final byte[] grown = new byte[newLength];
+        System.arraycopy(frame, 0, grown, 0, frameLength);
+        frame = grown;
+    }
+
+    private static int stripCarriageReturns(final byte[] bytes, final int offset, final int count) {
+        int write = offset;
+        for (int read = offset; read < offset + count; ++read) {
+            final byte b = bytes[read];
+            if (b != '\r') {
+                bytes[write++] = b;
+            }
+        }
+        return write;
+    }
+}
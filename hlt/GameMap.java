@@ -1,23 +1,42 @@
 package hlt;
 
+import utils.IntList;
+import utils.IntObjectMap;
+import utils.IntSet;
+
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.Collections;
-import java.util.Collection;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
 
 public class GameMap {
     private final int width, height;
     private final int playerId;
     private final List<Player> players;
     private final List<Player> playersUnmodifiable;
-    private final Map<Integer, Planet> planets;
+    private final IntObjectMap<Planet> planets;
     private final List<Ship> allShips;
     private final List<Ship> allShipsUnmodifiable;
 
+    private final List<IntObjectMap<Ship>> playerShips;
+    private final IntObjectMap<Ship> shipsById;
+    private final MapChanges changes = new MapChanges();
+    private final EntityStore store = new EntityStore();
+    private final SpatialIndex spatialIndex;
+    private final NavigationCache navigationCache = new NavigationCache();
+    private Roadmap roadmap;
+    private boolean incrementalUpdates = true;
+
+    private static final Ship.DockingStatus[] DOCKING_STATUSES = Ship.DockingStatus.values();
+
     // used only during parsing to reduce memory allocations
-    private final List<Ship> currentShips = new ArrayList<>();
+    private final IntSet seenShips = new IntSet();
+    private final IntSet seenPlanets = new IntSet();
+    private final IntList currentDockedShips = new IntList();
 
     public GameMap(final int width, final int height, final int playerId) {
         this.width = width;
@@ -25,9 +44,12 @@ public class GameMap {
         this.playerId = playerId;
         players = new ArrayList<>(Constants.MAX_PLAYERS);
         playersUnmodifiable = Collections.unmodifiableList(players);
-        planets = new TreeMap<>();
+        planets = new IntObjectMap<>();
         allShips = new ArrayList<>();
         allShipsUnmodifiable = Collections.unmodifiableList(allShips);
+        playerShips = new ArrayList<>(Constants.MAX_PLAYERS);
+        shipsById = new IntObjectMap<>();
+        spatialIndex = new SpatialIndex(store, width, height);
     }
 
     public int getHeight() {
@@ -54,11 +76,23 @@ public class GameMap {
         return players.get(playerId).getShip(entityId);
     }
 
+    /**
+     * @return the ship with the given id of any player, or null if it does not exist (anymore)
+     */
+    public Ship getShip(final int entityId) {
+        return shipsById.get(entityId);
+    }
+
     public Planet getPlanet(final int entityId) {
         return planets.get(entityId);
     }
 
     public Map<Integer, Planet> getAllPlanets() {
+        return planets.asMap();
+    }
+
+    /** The planets by id without boxing. Must not be modified. */
+    public IntObjectMap<Planet> getPlanetMap() {
         return planets;
     }
 
@@ -66,84 +100,320 @@ public class GameMap {
         return allShipsUnmodifiable;
     }
 
-    public ArrayList<Entity> objectsBetween(Position start, Position target) {
-        final ArrayList<Entity> entitiesFound = new ArrayList<>();
+    public EntityStore getEntityStore() {
+        return store;
+    }
 
-        addEntitiesBetween(entitiesFound, start, target, planets.values());
-        addEntitiesBetween(entitiesFound, start, target, allShips);
+    /** Routes around the planets, or null before {@link #buildRoadmap()} ran. */
+    public Roadmap getRoadmap() {
+        return roadmap;
+    }
 
-        return entitiesFound;
+    /** Builds the roadmap from the current planets; meant for the pre-game phase. */
+    public Roadmap buildRoadmap() {
+        roadmap = Roadmap.build(this);
+        return roadmap;
+    }
+
+    /** Navigation results of the current turn; emptied on every update. */
+    public NavigationCache getNavigationCache() {
+        return navigationCache;
+    }
+
+    /** The grid over all entities of the current turn, rebuilt on first use after every update. */
+    public SpatialIndex getSpatialIndex() {
+        return spatialIndex.refresh();
+    }
+
+    /**
+     * The k entities closest to the given position, nearest first. Entities at equal distance are all
+     * kept. If the position is an entity itself, it is excluded.
+     *
+     * @param filter may be null to accept everything
+     */
+    public List<Entity> kNearest(final Position position, final int k, final Predicate<Entity> filter) {
+        return getSpatialIndex().kNearest(position, k, filter);
+    }
+
+    /**
+     * All entities whose center lies within the given radius of the position.
+     *
+     * @param filter may be null to accept everything
+     */
+    public List<Entity> withinRadius(final Position position, final double radius, final Predicate<Entity> filter) {
+        return getSpatialIndex().withinRadius(position, radius, filter);
     }
 
-    private static void addEntitiesBetween(final List<Entity> entitiesFound,
-                                           final Position start, final Position target,
-                                           final Collection<? extends Entity> entitiesToCheck) {
+    /**
+     * Lazily yields entities ordered by distance from the position, nearest first, without sorting
+     * the whole map up front.
+     *
+     * @param filter may be null to accept everything
+     */
+    public SpatialIndex.DistanceIterator entitiesByDistance(final Position position, final Predicate<Entity> filter) {
+        return getSpatialIndex().byDistance(position, filter);
+    }
 
-        for (final Entity entity : entitiesToCheck) {
-            if (entity.equals(start) || entity.equals(target)) {
-                continue;
+    public ArrayList<Entity> objectsBetween(Position start, Position target) {
+        final IntList found = new IntList();
+        getSpatialIndex().collectBetween(start.getXPos(), start.getYPos(), target.getXPos(), target.getYPos(),
+                                         store.slotOf(start), store.slotOf(target), found);
+
+        // planets first, then ships, like before
+        final int[] slots = new int[found.size()];
+        for (int i = 0; i < slots.length; ++i) {
+            slots[i] = found.get(i);
+        }
+        Arrays.sort(slots);
+        final ArrayList<Entity> entitiesFound = new ArrayList<>(slots.length);
+        for (final int slot : slots) {
+            if (slot >= store.firstPlanetSlot()) {
+                entitiesFound.add(store.entity(slot));
             }
-            if (Collision.segmentCircleIntersect(start, target, entity, Constants.FORECAST_FUDGE_FACTOR)) {
-                entitiesFound.add(entity);
+        }
+        for (final int slot : slots) {
+            if (slot < store.firstPlanetSlot()) {
+                entitiesFound.add(store.entity(slot));
             }
         }
+        return entitiesFound;
+    }
+
+    /**
+     * Whether {@link #objectsBetween(Position, Position)} would return anything, stopping at the first hit.
+     */
+    public boolean anyObjectBetween(final Position start, final Position target) {
+        return getSpatialIndex().anyBetween(start.getXPos(), start.getYPos(), target.getXPos(), target.getYPos(),
+                                            store.slotOf(start), store.slotOf(target));
     }
 
+    /**
+     * Keyed by distance, so of several entities at exactly the same distance only one survives.
+     * Prefer {@link #entitiesByDistance(Position, Predicate)} or {@link #kNearest(Position, int, Predicate)}.
+     */
     public Map<Double, Entity> nearbyEntitiesByDistance(final Entity entity) {
         final Map<Double, Entity> entityByDistance = new TreeMap<>();
+        final int entitySlot = store.slotOf(entity);
+        final double xPos = entity.getXPos();
+        final double yPos = entity.getYPos();
 
-        for (final Planet planet : planets.values()) {
-            if (planet.equals(entity)) {
-                continue;
+        for (int slot = store.firstPlanetSlot(); slot < store.size(); ++slot) {
+            if (slot != entitySlot) {
+                entityByDistance.put(Math.sqrt(store.distanceSquared(slot, xPos, yPos)), store.entity(slot));
             }
-            entityByDistance.put(entity.getDistanceTo(planet), planet);
         }
 
-        for (final Ship ship : allShips) {
-            if (ship.equals(entity)) {
-                continue;
+        for (int slot = 0; slot < store.firstPlanetSlot(); ++slot) {
+            if (slot != entitySlot) {
+                entityByDistance.put(Math.sqrt(store.distanceSquared(slot, xPos, yPos)), store.entity(slot));
             }
-            entityByDistance.put(entity.getDistanceTo(ship), ship);
         }
 
         return entityByDistance;
     }
 
+    public MapChanges getChanges() {
+        return changes;
+    }
+
+    public boolean isIncrementalUpdates() {
+        return incrementalUpdates;
+    }
+
+    /**
+     * In incremental mode (the default), entities whose state did not change keep their instance
+     * from the previous turn. Otherwise every entity is replaced on every update. The change set is
+     * maintained either way.
+     */
+    public void setIncrementalUpdates(final boolean incrementalUpdates) {
+        this.incrementalUpdates = incrementalUpdates;
+    }
+
     public GameMap updateMap(final Metadata mapMetadata) {
-        final int numberOfPlayers = MetadataParser.parsePlayerNum(mapMetadata);
+        return update(mapMetadata);
+    }
+
+    public GameMap updateMap(final FrameParser frame) {
+        return update(frame);
+    }
 
-        players.clear();
-        planets.clear();
+    private GameMap update(final TokenSource frame) {
+        changes.clear();
+        store.clear();
+        navigationCache.invalidate();
+        seenShips.clear();
+        seenPlanets.clear();
         allShips.clear();
 
+        final int numberOfPlayers = frame.nextInt();
+
         // update players info
         for (int i = 0; i < numberOfPlayers; ++i) {
-            currentShips.clear();
-            final Map<Integer, Ship> currentPlayerShips = new TreeMap<>();
-            final int playerId = MetadataParser.parsePlayerId(mapMetadata);
-
-            final Player currentPlayer = new Player(playerId, currentPlayerShips);
-            MetadataParser.populateShipList(currentShips, playerId, mapMetadata);
-            allShips.addAll(currentShips);
+            final int playerId = frame.nextInt();
+            final IntObjectMap<Ship> currentPlayerShips = playerShips(i, playerId);
+            final int numberOfShips = frame.nextInt();
 
-            for (final Ship ship : currentShips) {
+            for (int j = 0; j < numberOfShips; ++j) {
+                final Ship ship = updateShip(playerId, frame);
                 currentPlayerShips.put(ship.getId(), ship);
+                allShips.add(ship);
             }
-            players.add(currentPlayer);
         }
+        while (players.size() > numberOfPlayers) {
+            players.remove(players.size() - 1);
+            playerShips.remove(playerShips.size() - 1);
+        }
+        removeDestroyedShips();
 
-        final int numberOfPlanets = Integer.parseInt(mapMetadata.pop());
+        final int numberOfPlanets = frame.nextInt();
 
         for (int i = 0; i < numberOfPlanets; ++i) {
-            final List<Integer> dockedShips = new ArrayList<>();
-            final Planet planet = MetadataParser.newPlanetFromMetadata(dockedShips, mapMetadata);
+            final Planet planet = updatePlanet(frame);
             planets.put(planet.getId(), planet);
         }
+        removeDestroyedPlanets();
 
-        if (!mapMetadata.isEmpty()) {
+        if (!frame.isEmpty()) {
             throw new IllegalStateException("Failed to parse data from Halite game engine. Please contact maintainers.");
         }
 
         return this;
     }
+
+    private IntObjectMap<Ship> playerShips(final int index, final int playerId) {
+        if (index < players.size() && players.get(index).getId() == playerId) {
+            return playerShips.get(index);
+        }
+
+        final IntObjectMap<Ship> ships = new IntObjectMap<>();
+        final Player player = new Player(playerId, ships);
+        if (index < players.size()) {
+            final IntObjectMap<Ship> replacedShips = playerShips.get(index);
+            for (int i = 0; i < replacedShips.size(); ++i) {
+                shipsById.remove(replacedShips.keyAt(i));
+                changes.destroyed(replacedShips.valueAt(i));
+            }
+            players.set(index, player);
+            playerShips.set(index, ships);
+        } else {
+            players.add(player);
+            playerShips.add(ships);
+        }
+        return ships;
+    }
+
+    private Ship updateShip(final int owner, final TokenSource frame) {
+        final int id = frame.nextInt();
+        final double xPos = frame.nextDouble();
+        final double yPos = frame.nextDouble();
+        final int health = frame.nextInt();
+
+        // Ignoring velocity(x,y) which is always (0,0) in current version.
+        frame.nextDouble();
+        frame.nextDouble();
+
+        final Ship.DockingStatus dockingStatus = DOCKING_STATUSES[frame.nextInt()];
+        final int dockedPlanet = frame.nextInt();
+        final int dockingProgress = frame.nextInt();
+        final int weaponCooldown = frame.nextInt();
+
+        seenShips.add(id);
+        final int slot = store.addShip(id, owner, xPos, yPos, health, dockingStatus.ordinal(),
+                                       dockedPlanet, dockingProgress, weaponCooldown);
+        final Ship previous = shipsById.get(id);
+        if (previous != null && previous.getOwner() == owner
+                && previous.getXPos() == xPos && previous.getYPos() == yPos
+                && previous.getHealth() == health && previous.getDockingStatus() == dockingStatus
+                && previous.getDockedPlanet() == dockedPlanet && previous.getDockingProgress() == dockingProgress
+                && previous.getWeaponCooldown() == weaponCooldown) {
+            if (incrementalUpdates) {
+                store.setEntity(slot, previous);
+                return previous;
+            }
+            final Ship ship = new Ship(owner, id, xPos, yPos, health, dockingStatus, dockedPlanet, dockingProgress, weaponCooldown);
+            shipsById.put(id, ship);
+            store.setEntity(slot, ship);
+            return ship;
+        }
+
+        final Ship ship = new Ship(owner, id, xPos, yPos, health, dockingStatus, dockedPlanet, dockingProgress, weaponCooldown);
+        shipsById.put(id, ship);
+        store.setEntity(slot, ship);
+        if (previous == null) {
+            changes.spawned(ship);
+        } else if (previous.getOwner() != owner) {
+            // ids are never reused by the engine, but stay consistent if they were
+            changes.destroyed(previous);
+            changes.spawned(ship);
+        } else {
+            changes.updated(previous, ship);
+        }
+        return ship;
+    }
+
+    private Planet updatePlanet(final TokenSource frame) {
+        final int id = frame.nextInt();
+        final double xPos = frame.nextDouble();
+        final double yPos = frame.nextDouble();
+        final int health = frame.nextInt();
+
+        final double radius = frame.nextDouble();
+        final int dockingSpots = frame.nextInt();
+        final int currentProduction = frame.nextInt();
+        final int remainingProduction = frame.nextInt();
+
+        final int hasOwner = frame.nextInt();
+        final int ownerCandidate = frame.nextInt();
+        final int owner = hasOwner == 1 ? ownerCandidate : -1;
+
+        final Planet previous = planets.get(id);
+        final int dockedShipCount = frame.nextInt();
+        currentDockedShips.clear();
+        for (int i = 0; i < dockedShipCount; ++i) {
+            currentDockedShips.add(frame.nextInt());
+        }
+        final boolean sameDockedShips = previous != null && previous.getDockedShipIds().contentEquals(currentDockedShips);
+
+        seenPlanets.add(id);
+        final int slot = store.addPlanet(id, owner, xPos, yPos, health, radius, dockingSpots,
+                                         currentProduction, remainingProduction, dockedShipCount);
+        final boolean unchanged = previous != null && sameDockedShips && previous.getOwner() == owner
+                && previous.getXPos() == xPos && previous.getYPos() == yPos && previous.getHealth() == health
+                && previous.getRadius() == radius && previous.getDockingSpots() == dockingSpots
+                && previous.getCurrentProduction() == currentProduction
+                && previous.getRemainingProduction() == remainingProduction;
+        if (unchanged && incrementalUpdates) {
+            store.setEntity(slot, previous);
+            return previous;
+        }
+
+        final Planet planet = new Planet(owner, id, xPos, yPos, health, radius, dockingSpots,
+                                         currentProduction, remainingProduction, new IntList(currentDockedShips));
+        store.setEntity(slot, planet);
+        if (previous == null) {
+            changes.spawned(planet);
+        } else if (!unchanged) {
+            changes.updated(previous, planet);
+        }
+        return planet;
+    }
+
+    private void removeDestroyedShips() {
+        if (seenShips.size() == shipsById.size()) {
+            return;
+        }
+        // one compaction per map, however many ships died this turn
+        final IntPredicate destroyed = id -> !seenShips.contains(id);
+        shipsById.removeKeys(destroyed, changes::destroyed);
+        for (int j = 0; j < playerShips.size(); ++j) {
+            playerShips.get(j).removeKeys(destroyed, null);
+        }
+    }
+
+    private void removeDestroyedPlanets() {
+        if (seenPlanets.size() == planets.size()) {
+            return;
+        }
+        planets.removeKeys(id -> !seenPlanets.contains(id), changes::destroyed);
+    }
 }
@@ -0,0 +1,218 @@
+package hlt;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records every turn's raw input frame, the encoded moves sent back and the phase timings into a
+ * memory-mapped file, so slow or bad turns can be replayed later.
+ *
+ * Recording is opt-in through {@code -Dbot.record=<file>}; {@code -Dbot.recordBytes} sets the file
+ * size, which is allocated and mapped once up front. A turn costs a few copies into the mapping and
+ * no system calls. Once the file is full, further turns are not recorded.
+ *
+ * Layout, little endian:
+ * <pre>
+ * header (HEADER_BYTES): MAGIC, VERSION, myId, width, height, botName (short length + ASCII),
+ *                        then at fixed offsets the committed turn count and the end of the data
+ * index  (MAX_TURNS longs): offset of the record of turn t, or 0
+ * records:               int length of the rest of the record, int turn,
+ *                        int frame length, frame bytes, int moves length, move bytes,
+ *                        int phase count, long nanos per phase in {@link TurnScheduler.Phase} order,
+ *                        int COMMIT
+ * </pre>
+ * A record's length prefix, its index entry and the header's turn count are written only after its
+ * commit marker, in that order. Pages of a mapped file belong to the operating system, so if the
+ * process is killed mid-game, everything up to the last committed turn is still readable.
+ */
+public class GameRecorder {
+
+    public static final int MAGIC = 0x484C5452; // "HLTR"
+    public static final int VERSION = 1;
+    public static final int COMMIT = 0x434F4D54; // "COMT"
+    public static final int HEADER_BYTES = 128;
+    public static final int MAX_BOT_NAME_BYTES = 64;
+    public static final int MAX_TURNS = 512;
+    public static final int INDEX_OFFSET = HEADER_BYTES;
+    public static final int DATA_OFFSET = INDEX_OFFSET + MAX_TURNS * 8;
+    public static final long DEFAULT_FILE_BYTES = 256L << 20;
+
+    /** Header field positions. */
+    public static final int TURN_COUNT_POSITION = 96;
+    public static final int DATA_END_POSITION = 104;
+
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+
+    private int dataEnd = DATA_OFFSET;
+    private int turnCount;
+    private int recordStart = -1;
+    private int recordTurn;
+    private int movesPosition;
+    private boolean full;
+
+    private GameRecorder(final MappedByteBuffer buffer, final int myId, final int width, final int height,
+                         final String botName) {
+        this.buffer = buffer;
+        this.capacity = buffer.capacity();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        final byte[] name = botName.getBytes(StandardCharsets.US_ASCII);
+        final int nameLength = Math.min(name.length, MAX_BOT_NAME_BYTES);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, myId);
+        buffer.putInt(12, width);
+        buffer.putInt(16, height);
+        buffer.putShort(20, (short) nameLength);
+        for (int i = 0; i < nameLength; ++i) {
+            buffer.put(22 + i, name[i]);
+        }
+        buffer.putInt(TURN_COUNT_POSITION, 0);
+        buffer.putLong(DATA_END_POSITION, dataEnd);
+    }
+
+    /**
+     * Creates or truncates the file, pre-sizes it to the given number of bytes and maps it.
+     */
+    public static GameRecorder create(final Path path, final long fileBytes, final int myId, final int width,
+                                      final int height, final String botName) throws IOException {
+        final long size = Math.min(Math.max(fileBytes, DATA_OFFSET), Integer.MAX_VALUE);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // a mapping stays valid after its channel is closed
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            return new GameRecorder(buffer, myId, width, height, botName);
+        }
+    }
+
+    /**
+     * @return a recorder writing to the file named by {@code -Dbot.record}, or null if recording is off
+     */
+    public static GameRecorder fromSystemProperties(final int myId, final int width, final int height,
+                                                    final String botName) {
+        final String file = System.getProperty("bot.record");
+        if (file == null || file.isEmpty()) {
+            return null;
+        }
+        try {
+            final GameRecorder recorder = create(Paths.get(file), Long.getLong("bot.recordBytes", DEFAULT_FILE_BYTES),
+                                                 myId, width, height, botName);
+            Log.info(() -> "Recording to " + file + ".");
+            return recorder;
+        } catch (final IOException e) {
+            Log.warn(() -> "Cannot record to " + file + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Starts the record of a turn with its input frame. A previous turn that was not committed is
+     * discarded.
+     */
+    public synchronized void beginTurn(final int turn, final byte[] frame, final int length) {
+        recordStart = -1;
+        if (full || turn < 0 || turn >= MAX_TURNS || !fits(dataEnd, 16 + length)) {
+            stop();
+            return;
+        }
+        recordStart = dataEnd;
+        recordTurn = turn;
+        buffer.putInt(recordStart + 4, turn);
+        buffer.putInt(recordStart + 8, length);
+        buffer.position(recordStart + 12);
+        buffer.put(frame, 0, length);
+        movesPosition = recordStart + 12 + length;
+        buffer.putInt(movesPosition, 0);
+    }
+
+    /**
+     * Stores the encoded moves of the current turn; a second call replaces the first.
+     */
+    public synchronized void recordMoves(final byte[] moves, final int length) {
+        if (recordStart < 0) {
+            return;
+        }
+        if (!fits(movesPosition, 4 + length)) {
+            stop();
+            return;
+        }
+        buffer.putInt(movesPosition, length);
+        buffer.position(movesPosition + 4);
+        buffer.put(moves, 0, length);
+    }
+
+    /**
+     * Finishes the current turn's record.
+     *
+     * @param phaseNanos time spent per phase, or null
+     */
+    public synchronized void commitTurn(final long[] phaseNanos) {
+        if (recordStart < 0) {
+            return;
+        }
+        final int phases = phaseNanos == null ? 0 : phaseNanos.length;
+        int position = movesPosition + 4 + buffer.getInt(movesPosition);
+        if (!fits(position, 8 + 8 * phases)) {
+            stop();
+            return;
+        }
+        buffer.putInt(position, phases);
+        position += 4;
+        for (int p = 0; p < phases; ++p) {
+            buffer.putLong(position, phaseNanos[p]);
+            position += 8;
+        }
+        buffer.putInt(position, COMMIT);
+        position += 4;
+
+        buffer.putInt(recordStart, position - recordStart - 4);
+        buffer.putLong(INDEX_OFFSET + 8 * recordTurn, recordStart);
+        dataEnd = position;
+        ++turnCount;
+        buffer.putLong(DATA_END_POSITION, dataEnd);
+        buffer.putInt(TURN_COUNT_POSITION, turnCount);
+        recordStart = -1;
+    }
+
+    public synchronized int getTurnCount() {
+        return turnCount;
+    }
+
+    public synchronized long getBytesUsed() {
+        return dataEnd;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /** Writes the mapped pages to disk; only needed to survive an operating system crash. */
+    public synchronized void force() {
+        buffer.force();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("GameRecorder[turns=%d, %d of %d KB used%s]", turnCount, dataEnd / 1024, capacity / 1024,
+                             full ? ", full" : "");
+    }
+
+    private boolean fits(final int position, final int bytes) {
+        return (long) position + bytes <= capacity;
+    }
+
+    private void stop() {
+        recordStart = -1;
+        if (!full) {
+            full = true;
+            Log.warn(() -> "Recording stopped: " + this);
+        }
+    }
+}
@@ -1,29 +1,216 @@
 package hlt;
 
-import java.io.FileWriter;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
 
+/**
+ * Leveled log that never blocks the turn loop on disk.
+ *
+ * Messages below the level set through {@link #setLevel(Level)} or {@code -Dbot.logLevel} are
+ * discarded before they are built: pass a {@link Supplier} to {@link #debug(Supplier)} and friends,
+ * and it is only called if the level is enabled. Accepted messages go into a bounded lock-free ring
+ * buffer that any thread may write to. A background thread drains it in batches, writing and
+ * flushing once per batch, and rotates the file once it grows beyond {@code -Dbot.logMaxBytes}.
+ *
+ * If the buffer is full, the message is dropped and counted rather than waiting for the writer;
+ * the number of dropped messages is written to the log as soon as there is room again. Messages
+ * logged before {@link #initialize(String)} are kept until the buffer fills up.
+ */
 public class Log {
 
-    private final FileWriter file;
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR, OFF
+    }
+
+    /** Messages the buffer holds; must be a power of two. */
+    public static final int CAPACITY = 1 << 13;
+    public static final long DEFAULT_MAX_BYTES = 16L << 20;
+    /** Rotated files kept next to the current one, as {@code <name>.1} (newest) to {@code <name>.<n>}. */
+    public static final int ROTATED_FILES = 2;
+
+    private static final int BATCH = 256;
+    private static final long IDLE_PARK_NANOS = 1_000_000;
+
+    private static volatile Level level = Level.valueOf(System.getProperty("bot.logLevel", Level.INFO.name()).toUpperCase());
+    private static final long maxBytes = Long.getLong("bot.logMaxBytes", DEFAULT_MAX_BYTES);
+
+    private static final AtomicReferenceArray<String> buffer = new AtomicReferenceArray<>(CAPACITY);
+    // next position to claim by producers
+    private static final AtomicLong tail = new AtomicLong();
+    // next position to drain, only advanced by the writer thread
+    private static volatile long head;
+    private static final AtomicLong dropped = new AtomicLong();
+    private static volatile long written;
+
     private static Log instance;
 
-    private Log(final FileWriter f) {
-        file = f;
+    private final File file;
+    private final Thread thread;
+    private Writer writer;
+    private long bytes;
+
+    private Log(final File file) throws IOException {
+        this.file = file;
+        writer = open();
+        thread = new Thread(this::drainLoop, "log-writer");
+        thread.setDaemon(true);
+    }
+
+    static synchronized void initialize(final String fileName) throws IOException {
+        if (instance != null) {
+            return;
+        }
+        instance = new Log(new File(fileName));
+        instance.thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::flush, "log-flush"));
+    }
+
+    public static void setLevel(final Level newLevel) {
+        level = newLevel;
     }
 
-    static void initialize(final FileWriter f) {
-        instance = new Log(f);
+    public static Level getLevel() {
+        return level;
     }
 
+    public static boolean isEnabled(final Level messageLevel) {
+        return messageLevel != Level.OFF && messageLevel.compareTo(level) >= 0;
+    }
+
+    /** Logs at {@link Level#INFO}. */
     public static void log(final String message) {
+        log(Level.INFO, message);
+    }
+
+    public static void log(final Level messageLevel, final String message) {
+        if (isEnabled(messageLevel)) {
+            offer(message);
+        }
+    }
+
+    public static void log(final Level messageLevel, final Supplier<String> message) {
+        if (isEnabled(messageLevel)) {
+            offer(message.get());
+        }
+    }
+
+    public static void debug(final Supplier<String> message) {
+        log(Level.DEBUG, message);
+    }
+
+    public static void info(final Supplier<String> message) {
+        log(Level.INFO, message);
+    }
+
+    public static void warn(final Supplier<String> message) {
+        log(Level.WARN, message);
+    }
+
+    /** Messages dropped so far because the buffer was full. */
+    public static long getDropped() {
+        return dropped.get();
+    }
+
+    /** Messages written to disk so far. */
+    public static long getWritten() {
+        return written;
+    }
+
+    /**
+     * Waits until every message logged so far has been written, for at most a second.
+     */
+    public static void flush() {
+        final long target = tail.get();
+        final long deadline = System.nanoTime() + 1_000_000_000L;
+        while (instance != null && head < target && System.nanoTime() < deadline) {
+            LockSupport.unpark(instance.thread);
+            Thread.yield();
+        }
+    }
+
+    private static void offer(final String message) {
+        long position;
+        do {
+            position = tail.get();
+            if (position - head >= CAPACITY) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!tail.compareAndSet(position, position + 1));
+        buffer.lazySet((int) position & (CAPACITY - 1), message);
+    }
+
+    private void drainLoop() {
+        final StringBuilder batch = new StringBuilder();
+        long reportedDrops = 0;
+        while (true) {
+            batch.setLength(0);
+            int count = 0;
+            long position = head;
+            while (count < BATCH && position < tail.get()) {
+                final int index = (int) position & (CAPACITY - 1);
+                final String message = buffer.get(index);
+                if (message == null) {
+                    // claimed, but not yet published by its producer
+                    break;
+                }
+                buffer.lazySet(index, null);
+                batch.append(message).append('\n');
+                ++position;
+                ++count;
+            }
+            head = position;
+
+            final long drops = dropped.get();
+            if (drops != reportedDrops) {
+                batch.append("(log buffer full, ").append(drops - reportedDrops).append(" messages dropped)\n");
+                reportedDrops = drops;
+            }
+            if (batch.length() == 0) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            write(batch);
+            written += count;
+        }
+    }
+
+    private void write(final CharSequence batch) {
         try {
-            instance.file.write(message);
-            instance.file.write('\n');
-            instance.file.flush();
+            if (bytes + batch.length() > maxBytes && bytes > 0) {
+                rotate();
+            }
+            writer.append(batch);
+            writer.flush();
+            bytes += batch.length();
         }
         catch (IOException e) {
             e.printStackTrace();
         }
     }
+
+    private void rotate() throws IOException {
+        writer.close();
+        for (int i = ROTATED_FILES; i >= 1; --i) {
+            final File source = i == 1 ? file : new File(file.getPath() + "." + (i - 1));
+            final File target = new File(file.getPath() + "." + i);
+            if (source.exists() && (!target.exists() || target.delete())) {
+                source.renameTo(target);
+            }
+        }
+        writer = open();
+        bytes = 0;
+    }
+
+    private Writer open() throws IOException {
+        return new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+    }
 }
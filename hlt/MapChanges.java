@@ -0,0 +1,125 @@
+package hlt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What changed between the previous and the current turn, keyed on entity identity.
+ *
+ * Lists are reused from turn to turn, so they are only valid until the next {@link GameMap} update.
+ * An entity shows up in {@link #getUpdated()} whenever any of its fields changed, and additionally
+ * in every more specific list that applies to it.
+ */
+public class MapChanges {
+
+    private final List<Entity> spawned = new ArrayList<>();
+    private final List<Entity> destroyed = new ArrayList<>();
+    private final List<Entity> updated = new ArrayList<>();
+    private final List<Ship> moved = new ArrayList<>();
+    private final List<Entity> damaged = new ArrayList<>();
+    private final List<Ship> dockingStatusChanged = new ArrayList<>();
+    private final List<Planet> ownershipChanged = new ArrayList<>();
+
+    private final List<Entity> spawnedUnmodifiable = Collections.unmodifiableList(spawned);
+    private final List<Entity> destroyedUnmodifiable = Collections.unmodifiableList(destroyed);
+    private final List<Entity> updatedUnmodifiable = Collections.unmodifiableList(updated);
+    private final List<Ship> movedUnmodifiable = Collections.unmodifiableList(moved);
+    private final List<Entity> damagedUnmodifiable = Collections.unmodifiableList(damaged);
+    private final List<Ship> dockingStatusChangedUnmodifiable = Collections.unmodifiableList(dockingStatusChanged);
+    private final List<Planet> ownershipChangedUnmodifiable = Collections.unmodifiableList(ownershipChanged);
+
+    /** Entities that did not exist in the previous turn. On the first update, this is everything. */
+    public List<Entity> getSpawned() {
+        return spawnedUnmodifiable;
+    }
+
+    /** Entities that existed in the previous turn but are gone now, as they were last seen. */
+    public List<Entity> getDestroyed() {
+        return destroyedUnmodifiable;
+    }
+
+    /** Current state of every entity which still exists but differs from the previous turn in any way. */
+    public List<Entity> getUpdated() {
+        return updatedUnmodifiable;
+    }
+
+    public List<Ship> getMoved() {
+        return movedUnmodifiable;
+    }
+
+    /** Ships and planets whose health decreased. */
+    public List<Entity> getDamaged() {
+        return damagedUnmodifiable;
+    }
+
+    public List<Ship> getDockingStatusChanged() {
+        return dockingStatusChangedUnmodifiable;
+    }
+
+    public List<Planet> getOwnershipChanged() {
+        return ownershipChangedUnmodifiable;
+    }
+
+    public int size() {
+        return spawned.size() + destroyed.size() + updated.size();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    void clear() {
+        spawned.clear();
+        destroyed.clear();
+        updated.clear();
+        moved.clear();
+        damaged.clear();
+        dockingStatusChanged.clear();
+        ownershipChanged.clear();
+    }
+
+    void spawned(final Entity entity) {
+        spawned.add(entity);
+    }
+
+    void destroyed(final Entity entity) {
+        destroyed.add(entity);
+    }
+
+    void updated(final Ship previous, final Ship current) {
+        updated.add(current);
+        if (previous.getXPos() != current.getXPos() || previous.getYPos() != current.getYPos()) {
+            moved.add(current);
+        }
+        if (current.getHealth() < previous.getHealth()) {
+            damaged.add(current);
+        }
+        if (previous.getDockingStatus() != current.getDockingStatus()) {
+            dockingStatusChanged.add(current);
+        }
+    }
+
+    void updated(final Planet previous, final Planet current) {
+        updated.add(current);
+        if (current.getHealth() < previous.getHealth()) {
+            damaged.add(current);
+        }
+        if (previous.getOwner() != current.getOwner()) {
+            ownershipChanged.add(current);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MapChanges[" +
+                "spawned=" + spawned.size() +
+                ", destroyed=" + destroyed.size() +
+                ", updated=" + updated.size() +
+                ", moved=" + moved.size() +
+                ", damaged=" + damaged.size() +
+                ", dockingStatusChanged=" + dockingStatusChanged.size() +
+                ", ownershipChanged=" + ownershipChanged.size() +
+                "]";
+    }
+}
@@ -0,0 +1,160 @@
+package hlt;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes a turn's moves as ASCII straight into a reusable byte buffer.
+ *
+ * The output is byte-for-byte what the former {@code StringBuilder} + {@code System.out.println}
+ * path produced: every command is followed by a space and the line ends with the platform line
+ * separator.
+ */
+public class MoveEncoder {
+
+    private static final byte UNDOCK_KEY = 'u';
+    private static final byte DOCK_KEY = 'd';
+    private static final byte THRUST_KEY = 't';
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    // "t <id> <thrust> <angle> " with generous room for long ids
+    private static final int MAX_MOVE_BYTES = 64;
+
+    private byte[] bytes = new byte[4096];
+    private ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    private int length;
+
+    private long lastEncodeNanos;
+    private int lastBytesWritten;
+    private long totalBytesWritten;
+
+    public static WritableByteChannel stdoutChannel() {
+        return new FileOutputStream(FileDescriptor.out).getChannel();
+    }
+
+    public MoveEncoder encode(final Iterable<Move> moves) {
+        final long start = System.nanoTime();
+        length = 0;
+
+        for (final Move move : moves) {
+            switch (move.getType()) {
+                case Noop:
+                    continue;
+                case Undock:
+                    ensureCapacity(MAX_MOVE_BYTES);
+                    putByte(UNDOCK_KEY);
+                    putNumber(move.getShip().getId());
+                    break;
+                case Dock:
+                    ensureCapacity(MAX_MOVE_BYTES);
+                    putByte(DOCK_KEY);
+                    putNumber(move.getShip().getId());
+                    putNumber(((DockMove) move).getDestinationId());
+                    break;
+                case Thrust:
+                    ensureCapacity(MAX_MOVE_BYTES);
+                    putByte(THRUST_KEY);
+                    putNumber(move.getShip().getId());
+                    putNumber(((ThrustMove) move).getThrust());
+                    putNumber(((ThrustMove) move).getAngle());
+                    break;
+            }
+        }
+
+        ensureCapacity(LINE_SEPARATOR.length);
+        System.arraycopy(LINE_SEPARATOR, 0, bytes, length, LINE_SEPARATOR.length);
+        length += LINE_SEPARATOR.length;
+
+        lastEncodeNanos = System.nanoTime() - start;
+        return this;
+    }
+
+    /**
+     * Writes the encoded line with a single channel write; only partial writes cause another call.
+     */
+    public void writeTo(final WritableByteChannel channel) throws IOException {
+        buffer.clear().limit(length);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        lastBytesWritten = length;
+        totalBytesWritten += length;
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public long getLastEncodeNanos() {
+        return lastEncodeNanos;
+    }
+
+    public int getLastBytesWritten() {
+        return lastBytesWritten;
+    }
+
+    public long getTotalBytesWritten() {
+        return totalBytesWritten;
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    private void putByte(final byte b) {
+        bytes[length++] = b;
+        bytes[length++] = ' ';
+    }
+
+    // Appends the decimal digits of value followed by a space.
+    private void putNumber(long value) {
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                final byte[] digits = Long.toString(value).getBytes(StandardCharsets.US_ASCII);
+                System.arraycopy(digits, 0, bytes, length, digits.length);
+                length += digits.length;
+                bytes[length++] = ' ';
+                return;
+            }
+            bytes[length++] = '-';
+            value = -value;
+        }
+
+        final int start = length;
+        do {
+            bytes[length++] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+
+        // digits were written least significant first
+        for (int i = start, j = length - 1; i < j; ++i, --j) {
+            final byte tmp = bytes[i];
+            bytes[i] = bytes[j];
+            bytes[j] = tmp;
+        }
+        bytes[length++] = ' ';
+    }
+
+    private void ensureCapacity(final int extra) {
+        if (length + extra <= bytes.length) {
+            return;
+        }
+        int newLength = bytes.length * 2;
+        while (newLength < length + extra) {
+            newLength *= 2;
+        }
+        final byte[] grown = new byte[newLength];
+        System.arraycopy(bytes, 0, grown, 0, length);
+        bytes = grown;
+        buffer = ByteBuffer.wrap(bytes);
+    }
+}
@@ -1,7 +1,58 @@
 package hlt;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
 public class Navigation {
 
+    /**
+     * Ways to find an unobstructed heading. Each solver keeps call counts and time spent, so both can
+     * be compared on the same games.
+     */
+    public enum Solver {
+        /** Rotate the target by one angular step at a time and rescan, up to maxCorrections times. */
+        LEGACY,
+        /** Compute blocked heading intervals once and pick the nearest free heading on either side. */
+        ANGULAR_SWEEP;
+
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        public long getNanos() {
+            return nanos.sum();
+        }
+
+        /** Calls that found no free heading and returned null. */
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        public void resetStats() {
+            calls.reset();
+            nanos.reset();
+            failures.reset();
+        }
+    }
+
+    // widens every blocked interval a little so headings grazing an obstacle count as blocked
+    private static final double ANGLE_EPSILON_DEG = 1e-6;
+
+    private static volatile Solver solver = Solver.LEGACY;
+
+    public static Solver getSolver() {
+        return solver;
+    }
+
+    public static void setSolver(final Solver solver) {
+        Navigation.solver = solver;
+    }
+
     public static ThrustMove navigateShipToDock(
             final GameMap gameMap,
             final Ship ship,
@@ -13,10 +64,65 @@ public class Navigation {
         final double angularStepRad = Math.PI/180.0;
         final Position targetPos = ship.getClosestPoint(dockTarget);
 
-        return navigateShipTowardsTarget(gameMap, ship, targetPos, maxThrust, avoidObstacles, maxCorrections, angularStepRad);
+        final NavigationCache cache = gameMap.getNavigationCache();
+        final Solver currentSolver = solver;
+        final long key = NavigationCache.key(ship.getId(), targetPos, maxThrust, currentSolver);
+        if (cache.contains(key)) {
+            return cache.get(key);
+        }
+
+        // Head for the next roadmap waypoint if a planet is in the way; fall back to local
+        // corrections towards the target itself if that fails.
+        final Roadmap roadmap = gameMap.getRoadmap();
+        final Position waypoint = roadmap == null ? null : roadmap.nextWaypoint(ship, targetPos);
+        ThrustMove move = navigateShipTowardsTarget(currentSolver, gameMap, ship, waypoint == null ? targetPos : waypoint,
+                                                    maxThrust, avoidObstacles, maxCorrections, angularStepRad);
+        if (move == null && waypoint != null && waypoint != targetPos) {
+            move = navigateShipTowardsTarget(currentSolver, gameMap, ship, targetPos, maxThrust,
+                                             avoidObstacles, maxCorrections, angularStepRad);
+        }
+        cache.put(key, move);
+        return move;
+    }
+
+    public static ThrustMove navigateShipTowardsTarget(
+            final GameMap gameMap,
+            final Ship ship,
+            final Position targetPos,
+            final int maxThrust,
+            final boolean avoidObstacles,
+            final int maxCorrections,
+            final double angularStepRad)
+    {
+        return navigateShipTowardsTarget(solver, gameMap, ship, targetPos, maxThrust, avoidObstacles, maxCorrections, angularStepRad);
     }
 
     public static ThrustMove navigateShipTowardsTarget(
+            final Solver solver,
+            final GameMap gameMap,
+            final Ship ship,
+            final Position targetPos,
+            final int maxThrust,
+            final boolean avoidObstacles,
+            final int maxCorrections,
+            final double angularStepRad)
+    {
+        final long start = System.nanoTime();
+        final ThrustMove move;
+        if (solver == Solver.ANGULAR_SWEEP) {
+            move = sweep(gameMap, ship, targetPos, maxThrust, avoidObstacles, maxCorrections, angularStepRad);
+        } else {
+            move = legacy(gameMap, ship, targetPos, maxThrust, avoidObstacles, maxCorrections, angularStepRad);
+        }
+        solver.nanos.add(System.nanoTime() - start);
+        solver.calls.increment();
+        if (move == null) {
+            solver.failures.increment();
+        }
+        return move;
+    }
+
+    private static ThrustMove legacy(
             final GameMap gameMap,
             final Ship ship,
             final Position targetPos,
@@ -32,12 +138,12 @@ public class Navigation {
         final double distance = ship.getDistanceTo(targetPos);
         final double angleRad = ship.orientTowardsInRad(targetPos);
 
-        if (avoidObstacles && !gameMap.objectsBetween(ship, targetPos).isEmpty()) {
+        if (avoidObstacles && gameMap.anyObjectBetween(ship, targetPos)) {
             final double newTargetDx = Math.cos(angleRad + angularStepRad) * distance;
             final double newTargetDy = Math.sin(angleRad + angularStepRad) * distance;
             final Position newTarget = new Position(ship.getXPos() + newTargetDx, ship.getYPos() + newTargetDy);
 
-            return navigateShipTowardsTarget(gameMap, ship, newTarget, maxThrust, true, (maxCorrections-1), angularStepRad);
+            return legacy(gameMap, ship, newTarget, maxThrust, true, (maxCorrections-1), angularStepRad);
         }
 
         final int thrust;
@@ -53,4 +159,218 @@ public class Navigation {
 
         return new ThrustMove(ship, angleDeg, thrust);
     }
+
+    /*
+     * A straight move of length L at heading theta from the ship hits a circle of (inflated) radius R
+     * whose center is D away at bearing alpha exactly when |theta - alpha| <= h, where
+     * - the end point lies in the circle for |theta - alpha| <= acos((L^2 + D^2 - R^2) / (2 L D)), and
+     * - if L reaches the tangent points (L^2 >= D^2 - R^2), anything up to asin(R / D) passes through it.
+     * Collecting these intervals for all obstacles in reach and merging them leaves the free headings.
+     */
+    private static ThrustMove sweep(
+            final GameMap gameMap,
+            final Ship ship,
+            final Position targetPos,
+            final int maxThrust,
+            final boolean avoidObstacles,
+            final int maxCorrections,
+            final double angularStepRad)
+    {
+        if (maxCorrections <= 0) {
+            return null;
+        }
+
+        final double distance = ship.getDistanceTo(targetPos);
+        final double angleRad = ship.orientTowardsInRad(targetPos);
+        final int thrust = distance < maxThrust ? (int) distance : maxThrust;
+        final int desiredDeg = Util.angleRadToDegClipped(angleRad);
+
+        if (!avoidObstacles || thrust == 0) {
+            return new ThrustMove(ship, desiredDeg, thrust);
+        }
+
+        final double reach = thrust + gameMap.getSpatialIndex().getMaxRadius() + Constants.FORECAST_FUDGE_FACTOR;
+        final List<Entity> obstacles = gameMap.withinRadius(ship, reach, null);
+        final BlockedIntervals blocked = new BlockedIntervals(obstacles.size() * 2);
+        for (final Entity obstacle : obstacles) {
+            addBlockedInterval(blocked, ship, obstacle, thrust);
+        }
+        blocked.merge();
+
+        final double stepDeg = Math.toDegrees(angularStepRad);
+        final int maxDeviation = (int) Math.floor((maxCorrections - 1) * stepDeg);
+        final int heading = blocked.nearestFree(desiredDeg, maxDeviation);
+        if (heading < 0) {
+            return null;
+        }
+        return new ThrustMove(ship, heading, thrust);
+    }
+
+    private static void addBlockedInterval(final BlockedIntervals blocked, final Ship ship, final Entity obstacle,
+                                           final double length) {
+        final double inflated = obstacle.getRadius() + Constants.FORECAST_FUDGE_FACTOR;
+        final double dx = obstacle.getXPos() - ship.getXPos();
+        final double dy = obstacle.getYPos() - ship.getYPos();
+        final double centerDistance = Math.sqrt(dx * dx + dy * dy);
+        if (centerDistance - inflated > length) {
+            return;
+        }
+        final double bearing = Math.toDegrees(Math.atan2(dy, dx));
+
+        final double halfWidthRad;
+        if (centerDistance <= inflated) {
+            // Already overlapping: only moving away is safe.
+            halfWidthRad = Math.PI / 2;
+        } else {
+            final double cos = (length * length + centerDistance * centerDistance - inflated * inflated)
+                    / (2 * length * centerDistance);
+            double halfWidth = cos >= 1 ? -1 : Math.acos(Math.max(-1, cos));
+            if (length * length >= centerDistance * centerDistance - inflated * inflated) {
+                halfWidth = Math.max(halfWidth, Math.asin(inflated / centerDistance));
+            }
+            if (halfWidth < 0) {
+                return;
+            }
+            halfWidthRad = halfWidth;
+        }
+
+        final double halfWidthDeg = Math.toDegrees(halfWidthRad) + ANGLE_EPSILON_DEG;
+        blocked.add(bearing - halfWidthDeg, bearing + halfWidthDeg);
+    }
+
+    /**
+     * Closed heading intervals in degrees, normalized to [0, 360) and merged.
+     */
+    private static class BlockedIntervals {
+        private double[] lows;
+        private double[] highs;
+        private int size;
+
+        BlockedIntervals(final int expected) {
+            lows = new double[Math.max(4, expected)];
+            highs = new double[Math.max(4, expected)];
+        }
+
+        void add(final double low, final double high) {
+            final double width = high - low;
+            if (width >= 360) {
+                put(0, 360);
+                return;
+            }
+            final double start = normalize(low);
+            if (start + width >= 360) {
+                put(start, 360);
+                put(0, start + width - 360);
+            } else {
+                put(start, start + width);
+            }
+        }
+
+        private void put(final double low, final double high) {
+            if (size == lows.length) {
+                lows = Arrays.copyOf(lows, size * 2);
+                highs = Arrays.copyOf(highs, size * 2);
+            }
+            lows[size] = low;
+            highs[size] = high;
+            ++size;
+        }
+
+        void merge() {
+            if (size < 2) {
+                return;
+            }
+            // Sort by low through packed keys: lows are in [0, 360], quantized far below the
+            // safety margin added to every interval, with the index in the low bits.
+            final long[] order = new long[size];
+            for (int i = 0; i < size; ++i) {
+                order[i] = ((long) (lows[i] * 1e9) << 24) | i;
+            }
+            Arrays.sort(order);
+            final double[] sortedLows = new double[size];
+            final double[] sortedHighs = new double[size];
+            for (int i = 0; i < size; ++i) {
+                final int index = (int) (order[i] & 0xFFFFFF);
+                sortedLows[i] = lows[index];
+                sortedHighs[i] = highs[index];
+            }
+
+            int merged = 0;
+            for (int i = 0; i < size; ++i) {
+                if (merged > 0 && sortedLows[i] <= highs[merged - 1]) {
+                    highs[merged - 1] = Math.max(highs[merged - 1], sortedHighs[i]);
+                } else {
+                    lows[merged] = sortedLows[i];
+                    highs[merged] = sortedHighs[i];
+                    ++merged;
+                }
+            }
+            size = merged;
+        }
+
+        // index of the interval containing the heading, or -1
+        private int find(final int heading) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+                if (highs[mid] < heading) {
+                    low = mid + 1;
+                } else if (lows[mid] > heading) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return the free integer heading closest to the desired one, preferring counter-clockwise on
+         *         ties like the legacy solver, or -1 if none is within maxDeviation degrees
+         */
+        int nearestFree(final int desired, final int maxDeviation) {
+            if (find(desired) < 0) {
+                return desired;
+            }
+            final int up = freeOffset(desired, 1, maxDeviation);
+            final int down = freeOffset(desired, -1, maxDeviation);
+            if (up < 0 && down < 0) {
+                return -1;
+            }
+            if (down < 0 || (up >= 0 && up <= down)) {
+                return Math.floorMod(desired + up, 360);
+            }
+            return Math.floorMod(desired - down, 360);
+        }
+
+        // Jumps from blocked interval to the first integer heading past it, in the given direction.
+        private int freeOffset(final int desired, final int direction, final int maxDeviation) {
+            int offset = 0;
+            for (int jumps = 0; jumps <= size + 1; ++jumps) {
+                final int heading = Math.floorMod(desired + direction * offset, 360);
+                final int interval = find(heading);
+                if (interval < 0) {
+                    return offset <= maxDeviation ? offset : -1;
+                }
+                final int next;
+                if (direction > 0) {
+                    next = (int) Math.floor(highs[interval]) + 1;
+                    offset += Math.max(1, next - heading);
+                } else {
+                    next = (int) Math.ceil(lows[interval]) - 1;
+                    offset += Math.max(1, heading - next);
+                }
+                if (offset > maxDeviation) {
+                    return -1;
+                }
+            }
+            return -1;
+        }
+
+        private static double normalize(final double degrees) {
+            final double normalized = degrees % 360;
+            return normalized < 0 ? normalized + 360 : normalized;
+        }
+    }
 }
@@ -0,0 +1,154 @@
+package hlt;
+
+import java.util.Arrays;
+
+/**
+ * Remembers navigation results for the current turn, keyed by ship, quantized target and max thrust.
+ *
+ * Entries are stamped with the turn they were computed in, so {@link #invalidate()} needs neither a
+ * rehash nor reallocation. {@link GameMap} calls it on every update. Failed navigations (null) are
+ * cached as well. Methods are synchronized so that planning threads can share one cache.
+ */
+public class NavigationCache {
+
+    /** Targets closer together than this share one cache entry. */
+    public static final double TARGET_QUANTUM = 1.0 / 16;
+
+    private static final long NO_KEY = -1;
+    private static final int COORDINATE_OFFSET = 1 << 14;
+    private static final int COORDINATE_LIMIT = 1 << 16;
+
+    private long[] keys = new long[1024];
+    private int[] stamps = new int[1024];
+    private ThrustMove[] values = new ThrustMove[1024];
+    private int mask = 1023;
+    private int count;
+    private int generation = 1;
+
+    private long turnHits;
+    private long turnMisses;
+    private long totalHits;
+    private long totalMisses;
+
+    /**
+     * Packs the lookup key, or returns -1 if the arguments are out of the packable range.
+     */
+    public static long key(final int shipId, final Position target, final int maxThrust, final Navigation.Solver solver) {
+        final long x = Math.round(target.getXPos() / TARGET_QUANTUM) + COORDINATE_OFFSET;
+        final long y = Math.round(target.getYPos() / TARGET_QUANTUM) + COORDINATE_OFFSET;
+        if (shipId < 0 || shipId >= (1 << 24) || x < 0 || x >= COORDINATE_LIMIT || y < 0 || y >= COORDINATE_LIMIT
+                || maxThrust < 0 || maxThrust > 15) {
+            return NO_KEY;
+        }
+        return ((long) shipId << 37) | (x << 21) | (y << 5) | ((long) maxThrust << 1) | solver.ordinal();
+    }
+
+    /**
+     * @return whether the key is cached for this turn; the value itself comes from {@link #get(long)}
+     */
+    public synchronized boolean contains(final long key) {
+        final boolean found = key != NO_KEY && find(key) >= 0;
+        if (found) {
+            ++turnHits;
+            ++totalHits;
+        } else {
+            ++turnMisses;
+            ++totalMisses;
+        }
+        return found;
+    }
+
+    public synchronized ThrustMove get(final long key) {
+        final int index = key == NO_KEY ? -1 : find(key);
+        return index < 0 ? null : values[index];
+    }
+
+    public synchronized void put(final long key, final ThrustMove move) {
+        if (key == NO_KEY) {
+            return;
+        }
+        if ((count + 1) * 2 > keys.length) {
+            grow();
+        }
+        int index = (int) mix(key) & mask;
+        while (stamps[index] == generation) {
+            if (keys[index] == key) {
+                values[index] = move;
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        stamps[index] = generation;
+        values[index] = move;
+        ++count;
+    }
+
+    /** Drops all entries and starts counting hits and misses for a new turn. */
+    public synchronized void invalidate() {
+        ++generation;
+        count = 0;
+        turnHits = 0;
+        turnMisses = 0;
+        Arrays.fill(values, null);
+    }
+
+    public synchronized long getTurnHits() {
+        return turnHits;
+    }
+
+    public synchronized long getTurnMisses() {
+        return turnMisses;
+    }
+
+    public synchronized long getTotalHits() {
+        return totalHits;
+    }
+
+    public synchronized long getTotalMisses() {
+        return totalMisses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("NavigationCache[turn hits=%d, misses=%d; total hits=%d, misses=%d]",
+                             turnHits, turnMisses, totalHits, totalMisses);
+    }
+
+    private int find(final long key) {
+        int index = (int) mix(key) & mask;
+        while (stamps[index] == generation) {
+            if (keys[index] == key) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void grow() {
+        final long[] oldKeys = keys;
+        final int[] oldStamps = stamps;
+        final ThrustMove[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        stamps = new int[oldKeys.length * 2];
+        values = new ThrustMove[oldKeys.length * 2];
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldStamps[i] == generation) {
+                int index = (int) mix(oldKeys[i]) & mask;
+                while (stamps[index] == generation) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = oldKeys[i];
+                stamps[index] = generation;
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    private static long mix(final long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+}
@@ -1,69 +1,58 @@
 package hlt;
 
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
 
 public class Networking {
 
-    private static final char UNDOCK_KEY = 'u';
-    private static final char DOCK_KEY = 'd';
-    private static final char THRUST_KEY = 't';
+    private static final FrameReader FRAME_READER = new FrameReader(System.in);
+    private static final MoveEncoder MOVE_ENCODER = new MoveEncoder();
+    private static final WritableByteChannel STDOUT = MoveEncoder.stdoutChannel();
+    private final FrameParser frameParser = new FrameParser();
+    private static GameRecorder recorder;
 
     private String botName;
     private int turn = 0;
 
     public static void sendMoves(final Iterable<Move> moves) {
-        final StringBuilder moveString = new StringBuilder();
-
-        for (final Move move : moves) {
-            switch (move.getType()) {
-                case Noop:
-                    continue;
-                case Undock:
-                    moveString.append(UNDOCK_KEY)
-                            .append(" ")
-                            .append(move.getShip().getId())
-                            .append(" ");
-                    break;
-                case Dock:
-                    moveString.append(DOCK_KEY)
-                            .append(" ")
-                            .append(move.getShip().getId())
-                            .append(" ")
-                            .append(((DockMove) move).getDestinationId())
-                            .append(" ");
-                    break;
-                case Thrust:
-                    moveString.append(THRUST_KEY)
-                            .append(" ")
-                            .append(move.getShip().getId())
-                            .append(" ")
-                            .append(((ThrustMove) move).getThrust())
-                            .append(" ")
-                            .append(((ThrustMove) move).getAngle())
-                            .append(" ");
-                    break;
+        try {
+            MOVE_ENCODER.encode(moves).writeTo(STDOUT);
+            if (recorder != null) {
+                recorder.recordMoves(MOVE_ENCODER.getBytes(), MOVE_ENCODER.getLength());
             }
+        } catch(final IOException e) {
+            System.exit(1);
+            throw new RuntimeException(e);
         }
-        System.out.println(moveString);
+        Log.debug(() -> String.format("Sent %d bytes of moves, encoded in %d us.",
+                MOVE_ENCODER.getLastBytesWritten(), MOVE_ENCODER.getLastEncodeNanos() / 1000));
+    }
+
+    public static MoveEncoder getMoveEncoder() {
+        return MOVE_ENCODER;
     }
 
     private static String readLine() {
         try {
-            StringBuilder builder = new StringBuilder();
-            int buffer;
-
-            for (; (buffer = System.in.read()) >= 0;) {
-                if (buffer == '\n') {
-                    break;
-                }
-                if (buffer == '\r') {
-                    // Ignore carriage return if on windows for manual testing.
-                    continue;
-                }
-                builder = builder.append((char)buffer);
-            }
-            return builder.toString();
+            return FRAME_READER.readLine();
+        } catch(final Exception e) {
+            System.exit(1);
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static FrameReader getFrameReader() {
+        return FRAME_READER;
+    }
+
+    /** The recorder set up through {@code -Dbot.record}, or null. */
+    public static GameRecorder getRecorder() {
+        return recorder;
+    }
+
+    private static void readFrame() {
+        try {
+            FRAME_READER.readFrame();
         } catch(final Exception e) {
             System.exit(1);
             throw new RuntimeException(e);
@@ -79,7 +68,7 @@ public class Networking {
 
         final int myId = Integer.parseInt(readLine());
         try {
-            Log.initialize(new FileWriter(String.format("%d_%s.log", myId, botName)));
+            Log.initialize(String.format("%d_%s.log", myId, botName));
         }
         catch (IOException e) {
             e.printStackTrace();
@@ -89,9 +78,18 @@ public class Networking {
         final int width = Integer.parseInt(inputStringMapSize.pop());
         final int height = Integer.parseInt(inputStringMapSize.pop());
 
+        recorder = GameRecorder.fromSystemProperties(myId, width, height, botName);
+
         final GameMap gameMap = new GameMap(width, height, myId);
         updateMap(gameMap);
 
+        final long roadmapStart = System.nanoTime();
+        final Roadmap roadmap = gameMap.buildRoadmap();
+        Log.info(() -> String.format("Built %s in %d us.", roadmap, (System.nanoTime() - roadmapStart) / 1000));
+        if (recorder != null) {
+            recorder.commitTurn(null);
+        }
+
         return gameMap;
     }
 
@@ -100,15 +98,21 @@ public class Networking {
             System.out.println(botName);
         }
 
-        final Metadata inputStringMetadata = readLineIntoMetadata();
+        readFrame();
+        if (recorder != null) {
+            recorder.beginTurn(turn, FRAME_READER.getFrame(), FRAME_READER.getFrameLength());
+        }
 
         if (turn == 0) {
             Log.log("--- PRE-GAME ---");
         } else {
             Log.log("--- TURN " + turn + " ---");
+            Log.debug(() -> String.format("Read frame of %d bytes in %d us.",
+                    FRAME_READER.getLastFrameBytes(), FRAME_READER.getLastReadNanos() / 1000));
         }
         ++turn;
 
-        map.updateMap(inputStringMetadata);
+        map.updateMap(frameParser.reset(FRAME_READER.getFrame(), FRAME_READER.getFrameLength()));
+        Log.debug(() -> map.getChanges().toString());
     }
 }
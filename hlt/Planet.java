@@ -1,6 +1,7 @@
 package hlt;
 
-import java.util.Collections;
+import utils.IntList;
+
 import java.util.List;
 
 public class Planet extends Entity {
@@ -8,18 +9,34 @@ public class Planet extends Entity {
     private final int remainingProduction;
     private final int currentProduction;
     private final int dockingSpots;
-    private final List<Integer> dockedShips;
+    private final IntList dockedShips;
 
     public Planet(final int owner, final int id, final double xPos, final double yPos, final int health,
                   final double radius, final int dockingSpots, final int currentProduction,
                   final int remainingProduction, final List<Integer> dockedShips) {
 
+        this(owner, id, xPos, yPos, health, radius, dockingSpots, currentProduction, remainingProduction,
+             toIntList(dockedShips));
+    }
+
+    public Planet(final int owner, final int id, final double xPos, final double yPos, final int health,
+                  final double radius, final int dockingSpots, final int currentProduction,
+                  final int remainingProduction, final IntList dockedShips) {
+
         super(owner, id, xPos, yPos, health, radius);
 
         this.dockingSpots = dockingSpots;
         this.currentProduction = currentProduction;
         this.remainingProduction = remainingProduction;
-        this.dockedShips = Collections.unmodifiableList(dockedShips);
+        this.dockedShips = dockedShips;
+    }
+
+    private static IntList toIntList(final List<Integer> ids) {
+        final IntList list = new IntList(ids.size());
+        for (final Integer id : ids) {
+            list.add(id);
+        }
+        return list;
     }
 
     public int getRemainingProduction() {
@@ -35,11 +52,16 @@ public class Planet extends Entity {
     }
 
     public List<Integer> getDockedShips() {
+        return dockedShips.asList();
+    }
+
+    /** The ids of the docked ships without boxing. Must not be modified. */
+    public IntList getDockedShipIds() {
         return dockedShips;
     }
 
     public int numDockedShips() {
-        return getDockedShips().size();
+        return dockedShips.size();
     }
 
     public boolean isFull() {
@@ -1,20 +1,33 @@
 package hlt;
 
-import java.util.Collections;
+import utils.IntObjectMap;
+
 import java.util.Map;
-import java.util.TreeMap;
 
 public class Player {
 
-    private final Map<Integer, Ship> ships;
+    private final IntObjectMap<Ship> ships;
     private final int id;
 
-    public Player(final int id, Map<Integer, Ship> ships) {
+    public Player(final int id, final Map<Integer, Ship> ships) {
+        this.id = id;
+        this.ships = new IntObjectMap<>(ships.size());
+        for (final Map.Entry<Integer, Ship> entry : ships.entrySet()) {
+            this.ships.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    Player(final int id, final IntObjectMap<Ship> ships) {
         this.id = id;
-        this.ships = Collections.unmodifiableMap(ships);
+        this.ships = ships;
     }
 
     public Map<Integer, Ship> getShips() {
+        return ships.asMap();
+    }
+
+    /** The ships by id without boxing. Must not be modified. */
+    public IntObjectMap<Ship> getShipMap() {
         return ships;
     }
 
@@ -0,0 +1,325 @@
+package hlt;
+
+import java.util.Arrays;
+
+/**
+ * Visibility graph around the planets, built once before the game starts.
+ *
+ * Every planet gets a ring of waypoints just outside its inflated radius, placed so that the
+ * straight edges between neighbouring waypoints of one ring never touch the planet. Edges connect
+ * all waypoint pairs with a clear line of sight past every planet. Planets never move, so the graph
+ * stays valid for the whole game; planets destroyed later only make it a little conservative.
+ *
+ * {@link #nextWaypoint(Position, Position)} connects start and goal to the graph and runs A*, so
+ * a long trip around planets costs one graph search instead of many rotated segment scans.
+ * Ships are not part of the graph; local avoidance is still up to {@link Navigation}.
+ *
+ * The graph never changes after it is built, so threads share it freely; every thread searches with
+ * scratch arrays of its own.
+ */
+public class Roadmap {
+
+    /** Waypoints placed around every planet. */
+    public static final int WAYPOINTS_PER_PLANET = 12;
+    /** Extra room between a planet's inflated radius and the edges of its waypoint ring. */
+    public static final double CLEARANCE = 1.0;
+
+    private static final double MIN_HOP = 1.0;
+
+    private final int planetCount;
+    private final double[] planetX;
+    private final double[] planetY;
+    private final double[] planetRadius;
+
+    private final int nodeCount;
+    private final double[] nodeX;
+    private final double[] nodeY;
+
+    // adjacency in compressed rows: the neighbours of node i are edgeTarget[edgeStart[i] .. edgeStart[i + 1])
+    private final int[] edgeStart;
+    private final int[] edgeTarget;
+    private final double[] edgeLength;
+
+    // A* scratch space per thread, reused across queries
+    private final ThreadLocal<Search> searches;
+
+    private Roadmap(final double[] planetX, final double[] planetY, final double[] planetRadius,
+                    final double[] nodeX, final double[] nodeY, final int nodeCount) {
+        this.planetCount = planetX.length;
+        this.planetX = planetX;
+        this.planetY = planetY;
+        this.planetRadius = planetRadius;
+        this.nodeCount = nodeCount;
+        this.nodeX = nodeX;
+        this.nodeY = nodeY;
+
+        final int[][] rows = new int[nodeCount][];
+        final int[] rowSize = new int[nodeCount];
+        for (int i = 0; i < nodeCount; ++i) {
+            rows[i] = new int[8];
+        }
+        for (int i = 0; i < nodeCount; ++i) {
+            for (int j = i + 1; j < nodeCount; ++j) {
+                if (isVisible(nodeX[i], nodeY[i], nodeX[j], nodeY[j], -1, -1)) {
+                    rows[i] = append(rows[i], rowSize[i]++, j);
+                    rows[j] = append(rows[j], rowSize[j]++, i);
+                }
+            }
+        }
+
+        edgeStart = new int[nodeCount + 1];
+        for (int i = 0; i < nodeCount; ++i) {
+            edgeStart[i + 1] = edgeStart[i] + rowSize[i];
+        }
+        final int[] targets = new int[edgeStart[nodeCount]];
+        final double[] lengths = new double[edgeStart[nodeCount]];
+        for (int i = 0; i < nodeCount; ++i) {
+            for (int k = 0; k < rowSize[i]; ++k) {
+                final int j = rows[i][k];
+                targets[edgeStart[i] + k] = j;
+                lengths[edgeStart[i] + k] = Math.hypot(nodeX[j] - nodeX[i], nodeY[j] - nodeY[i]);
+            }
+        }
+        edgeTarget = targets;
+        edgeLength = lengths;
+
+        searches = ThreadLocal.withInitial(() -> new Search(nodeCount));
+    }
+
+    /**
+     * Builds the roadmap for the planets currently on the map.
+     */
+    public static Roadmap build(final GameMap gameMap) {
+        final int planetCount = gameMap.getPlanetMap().size();
+        final double[] planetX = new double[planetCount];
+        final double[] planetY = new double[planetCount];
+        final double[] planetRadius = new double[planetCount];
+        for (int i = 0; i < planetCount; ++i) {
+            final Planet planet = gameMap.getPlanetMap().valueAt(i);
+            planetX[i] = planet.getXPos();
+            planetY[i] = planet.getYPos();
+            planetRadius[i] = planet.getRadius();
+        }
+
+        final double[] nodeX = new double[planetCount * WAYPOINTS_PER_PLANET];
+        final double[] nodeY = new double[nodeX.length];
+        final double edgeFactor = 1 / Math.cos(Math.PI / WAYPOINTS_PER_PLANET);
+        int nodeCount = 0;
+        for (int p = 0; p < planetCount; ++p) {
+            final double ring = (planetRadius[p] + Constants.FORECAST_FUDGE_FACTOR + CLEARANCE) * edgeFactor;
+            for (int k = 0; k < WAYPOINTS_PER_PLANET; ++k) {
+                final double angle = 2 * Math.PI * k / WAYPOINTS_PER_PLANET;
+                final double x = planetX[p] + ring * Math.cos(angle);
+                final double y = planetY[p] + ring * Math.sin(angle);
+                if (x < 0 || y < 0 || x >= gameMap.getWidth() || y >= gameMap.getHeight()
+                        || insideAnyPlanet(x, y, planetX, planetY, planetRadius)) {
+                    continue;
+                }
+                nodeX[nodeCount] = x;
+                nodeY[nodeCount] = y;
+                ++nodeCount;
+            }
+        }
+
+        return new Roadmap(planetX, planetY, planetRadius, nodeX, nodeY, nodeCount);
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getEdgeCount() {
+        return edgeTarget.length / 2;
+    }
+
+    /**
+     * @return whether the straight segment between both positions passes clear of every planet,
+     *         ignoring planets that already contain one of the end points
+     */
+    public boolean isVisible(final Position from, final Position to) {
+        return isVisible(from.getXPos(), from.getYPos(), to.getXPos(), to.getYPos(),
+                         containingPlanet(from.getXPos(), from.getYPos()), containingPlanet(to.getXPos(), to.getYPos()));
+    }
+
+    /**
+     * Finds the shortest route around the planets and returns its first stop.
+     *
+     * @return the goal itself if it is in sight, the first waypoint of the shortest route otherwise,
+     *         or null if the goal cannot be reached through the roadmap
+     */
+    public Position nextWaypoint(final Position from, final Position to) {
+        final double startX = from.getXPos();
+        final double startY = from.getYPos();
+        final double goalX = to.getXPos();
+        final double goalY = to.getYPos();
+        final int startPlanet = containingPlanet(startX, startY);
+        final int goalPlanet = containingPlanet(goalX, goalY);
+
+        if (isVisible(startX, startY, goalX, goalY, startPlanet, goalPlanet)) {
+            return to;
+        }
+
+        final Search search = searches.get();
+        final double[] cost = search.cost;
+        final int[] firstHop = search.firstHop;
+        final double[] goalDistance = search.goalDistance;
+        final int goal = nodeCount;
+        search.start();
+        for (int i = 0; i < nodeCount; ++i) {
+            goalDistance[i] = isVisible(nodeX[i], nodeY[i], goalX, goalY, -1, goalPlanet)
+                    ? Math.hypot(goalX - nodeX[i], goalY - nodeY[i]) : -1;
+            final double startDistance = Math.hypot(nodeX[i] - startX, nodeY[i] - startY);
+            // a ship sitting on a waypoint must not pick it as its next stop
+            if (startDistance >= MIN_HOP && isVisible(startX, startY, nodeX[i], nodeY[i], startPlanet, -1)) {
+                relax(search, i, startDistance, i, goalX, goalY);
+            }
+        }
+
+        while (search.heapSize > 0) {
+            final double queued = search.heapCost[0];
+            final int node = search.pop();
+            if (node == goal) {
+                return new Position(nodeX[firstHop[goal]], nodeY[firstHop[goal]]);
+            }
+            if (queued > cost[node] + heuristic(node, goalX, goalY)) {
+                // stale entry
+                continue;
+            }
+            if (goalDistance[node] >= 0) {
+                relax(search, goal, cost[node] + goalDistance[node], firstHop[node], goalX, goalY);
+            }
+            for (int e = edgeStart[node]; e < edgeStart[node + 1]; ++e) {
+                relax(search, edgeTarget[e], cost[node] + edgeLength[e], firstHop[node], goalX, goalY);
+            }
+        }
+        return null;
+    }
+
+    private void relax(final Search search, final int node, final double newCost, final int hop,
+                       final double goalX, final double goalY) {
+        if (search.seen[node] == search.id && search.cost[node] <= newCost) {
+            return;
+        }
+        search.seen[node] = search.id;
+        search.cost[node] = newCost;
+        search.firstHop[node] = hop;
+        search.push(newCost + heuristic(node, goalX, goalY), node);
+    }
+
+    private double heuristic(final int node, final double goalX, final double goalY) {
+        return node == nodeCount ? 0 : Math.hypot(goalX - nodeX[node], goalY - nodeY[node]);
+    }
+
+    private boolean isVisible(final double startX, final double startY, final double endX, final double endY,
+                              final int ignoreA, final int ignoreB) {
+        for (int p = 0; p < planetCount; ++p) {
+            if (p != ignoreA && p != ignoreB
+                    && Collision.segmentCircleIntersect(startX, startY, endX, endY, planetX[p], planetY[p],
+                                                        planetRadius[p], Constants.FORECAST_FUDGE_FACTOR)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // index of a planet whose inflated radius contains the point, or -1
+    private int containingPlanet(final double x, final double y) {
+        for (int p = 0; p < planetCount; ++p) {
+            final double reach = planetRadius[p] + Constants.FORECAST_FUDGE_FACTOR;
+            if (Collision.square(x - planetX[p]) + Collision.square(y - planetY[p]) <= reach * reach) {
+                return p;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean insideAnyPlanet(final double x, final double y,
+                                           final double[] planetX, final double[] planetY, final double[] planetRadius) {
+        for (int p = 0; p < planetX.length; ++p) {
+            final double reach = planetRadius[p] + Constants.FORECAST_FUDGE_FACTOR + CLEARANCE;
+            if (Collision.square(x - planetX[p]) + Collision.square(y - planetY[p]) < reach * reach) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[] append(final int[] row, final int size, final int value) {
+        final int[] target = size == row.length ? Arrays.copyOf(row, size * 2) : row;
+        target[size] = value;
+        return target;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Roadmap[planets=%d, waypoints=%d, edges=%d]", planetCount, nodeCount, getEdgeCount());
+    }
+
+    /** Scratch space of one thread's searches; nodes count as unseen until marked with the current search id. */
+    private static final class Search {
+        final double[] cost;
+        final int[] firstHop;
+        final int[] seen;
+        final double[] goalDistance;
+        int id;
+        double[] heapCost = new double[64];
+        int[] heapNode = new int[64];
+        int heapSize;
+
+        Search(final int nodeCount) {
+            cost = new double[nodeCount + 1];
+            firstHop = new int[nodeCount + 1];
+            seen = new int[nodeCount + 1];
+            goalDistance = new double[nodeCount];
+        }
+
+        void start() {
+            ++id;
+            heapSize = 0;
+        }
+
+        void push(final double priority, final int node) {
+            if (heapSize == heapCost.length) {
+                heapCost = Arrays.copyOf(heapCost, heapSize * 2);
+                heapNode = Arrays.copyOf(heapNode, heapSize * 2);
+            }
+            int i = heapSize++;
+            while (i > 0) {
+                final int parent = (i - 1) >>> 1;
+                if (heapCost[parent] <= priority) {
+                    break;
+                }
+                heapCost[i] = heapCost[parent];
+                heapNode[i] = heapNode[parent];
+                i = parent;
+            }
+            heapCost[i] = priority;
+            heapNode[i] = node;
+        }
+
+        int pop() {
+            final int top = heapNode[0];
+            final double lastCost = heapCost[--heapSize];
+            final int lastNode = heapNode[heapSize];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= heapSize) {
+                    break;
+                }
+                if (child + 1 < heapSize && heapCost[child + 1] < heapCost[child]) {
+                    ++child;
+                }
+                if (heapCost[child] >= lastCost) {
+                    break;
+                }
+                heapCost[i] = heapCost[child];
+                heapNode[i] = heapNode[child];
+                i = child;
+            }
+            heapCost[i] = lastCost;
+            heapNode[i] = lastNode;
+            return top;
+        }
+    }
+}
@@ -0,0 +1,503 @@
+package hlt;
+
+import utils.IntList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+/**
+ * Uniform grid over the map that buckets every entity of an {@link EntityStore} by its center.
+ *
+ * A second set of buckets registers every entity in all cells overlapped by the bounding box of
+ * its circle inflated by {@link Constants#FORECAST_FUDGE_FACTOR}. Segment queries walk only the
+ * cells a segment crosses and run the exact {@link Collision} test on the entities found there.
+ *
+ * The grid is rebuilt with a counting sort whenever the store has moved on to a new turn, which
+ * is O(entities) and reuses its arrays. Distances are measured between centers, like
+ * {@link Position#getDistanceTo(Position)}. Entities at equal distance are all reported, ordered
+ * by slot.
+ */
+public class SpatialIndex {
+
+    public static final double CELL_SIZE = 8.0;
+
+    // keeps entities touching a cell border registered on both sides
+    private static final double COVER_EPSILON = 1e-6;
+
+    private final EntityStore store;
+    private final int columns;
+    private final int rows;
+    private final int[] cellStart;
+    private int[] cellEntries = new int[256];
+    private volatile int builtGeneration = -1;
+    private double maxRadius;
+
+    // broad phase for segment queries
+    private final int[] coverStart;
+    private int[] coverEntries = new int[1024];
+    private int[] minColumn = new int[256];
+    private int[] maxColumn = new int[256];
+    private int[] minRow = new int[256];
+    private int[] maxRow = new int[256];
+
+    public SpatialIndex(final EntityStore store, final int width, final int height) {
+        this.store = store;
+        columns = Math.max(1, (int) Math.ceil(width / CELL_SIZE));
+        rows = Math.max(1, (int) Math.ceil(height / CELL_SIZE));
+        cellStart = new int[columns * rows + 1];
+        coverStart = new int[columns * rows + 1];
+    }
+
+    /**
+     * Rebuilds the grid if the store has been updated since the last build. Safe to call from
+     * several planning threads; queries themselves only read the grid.
+     */
+    public SpatialIndex refresh() {
+        if (builtGeneration != store.generation()) {
+            rebuild();
+        }
+        return this;
+    }
+
+    private synchronized void rebuild() {
+        final int generation = store.generation();
+        if (builtGeneration == generation) {
+            return;
+        }
+
+        final int size = store.size();
+        if (cellEntries.length < size) {
+            cellEntries = new int[Math.max(size, cellEntries.length * 2)];
+        }
+
+        Arrays.fill(cellStart, 0);
+        maxRadius = 0;
+        for (int slot = 0; slot < size; ++slot) {
+            ++cellStart[cellOf(store.x(slot), store.y(slot)) + 1];
+            maxRadius = Math.max(maxRadius, store.radius(slot));
+        }
+        final int cells = columns * rows;
+        for (int cell = 0; cell < cells; ++cell) {
+            cellStart[cell + 1] += cellStart[cell];
+        }
+        // Fill back to front through the end pointers, so every cell ends up sorted by slot and
+        // cellStart[c + 1] ends up holding the start of cell c.
+        for (int slot = size - 1; slot >= 0; --slot) {
+            cellEntries[--cellStart[cellOf(store.x(slot), store.y(slot)) + 1]] = slot;
+        }
+        System.arraycopy(cellStart, 1, cellStart, 0, cells);
+        cellStart[cells] = size;
+
+        buildCover(size);
+        // publishes the grid to other threads
+        builtGeneration = generation;
+    }
+
+    private void buildCover(final int size) {
+        if (minColumn.length < size) {
+            final int length = Math.max(size, minColumn.length * 2);
+            minColumn = new int[length];
+            maxColumn = new int[length];
+            minRow = new int[length];
+            maxRow = new int[length];
+        }
+
+        final int cells = columns * rows;
+        Arrays.fill(coverStart, 0);
+        int total = 0;
+        for (int slot = 0; slot < size; ++slot) {
+            final double reach = store.radius(slot) + Constants.FORECAST_FUDGE_FACTOR + COVER_EPSILON;
+            minColumn[slot] = column(store.x(slot) - reach);
+            maxColumn[slot] = column(store.x(slot) + reach);
+            minRow[slot] = row(store.y(slot) - reach);
+            maxRow[slot] = row(store.y(slot) + reach);
+            for (int row = minRow[slot]; row <= maxRow[slot]; ++row) {
+                for (int column = minColumn[slot]; column <= maxColumn[slot]; ++column) {
+                    ++coverStart[row * columns + column + 1];
+                }
+            }
+            total += (maxRow[slot] - minRow[slot] + 1) * (maxColumn[slot] - minColumn[slot] + 1);
+        }
+        if (coverEntries.length < total) {
+            coverEntries = new int[Math.max(total, coverEntries.length * 2)];
+        }
+        for (int cell = 0; cell < cells; ++cell) {
+            coverStart[cell + 1] += coverStart[cell];
+        }
+        for (int slot = size - 1; slot >= 0; --slot) {
+            for (int row = minRow[slot]; row <= maxRow[slot]; ++row) {
+                for (int column = minColumn[slot]; column <= maxColumn[slot]; ++column) {
+                    coverEntries[--coverStart[row * columns + column + 1]] = slot;
+                }
+            }
+        }
+        System.arraycopy(coverStart, 1, coverStart, 0, cells);
+        coverStart[cells] = total;
+    }
+
+    /**
+     * Collects the slots of all entities that {@link Collision#segmentCircleIntersect} reports between
+     * start and end with {@link Constants#FORECAST_FUDGE_FACTOR}, except for the two excluded slots.
+     */
+    public void collectBetween(final double startX, final double startY, final double endX, final double endY,
+                               final int excludedA, final int excludedB, final IntList found) {
+        refresh();
+        segmentQuery(startX, startY, endX, endY, excludedA, excludedB, found);
+    }
+
+    /**
+     * Like {@link #collectBetween}, but stops at the first hit.
+     */
+    public boolean anyBetween(final double startX, final double startY, final double endX, final double endY,
+                              final int excludedA, final int excludedB) {
+        refresh();
+        return segmentQuery(startX, startY, endX, endY, excludedA, excludedB, null);
+    }
+
+    // Walks the cells crossed by the segment (Amanatides & Woo). An entity's cover rectangle is
+    // convex, so the walk enters it exactly once: testing an entity only in the first visited cell
+    // of its rectangle avoids duplicates without any per-query state.
+    private boolean segmentQuery(final double startX, final double startY, final double endX, final double endY,
+                                 final int excludedA, final int excludedB, final IntList found) {
+        if (!insideGrid(startX, startY) || !insideGrid(endX, endY)) {
+            return bruteForce(startX, startY, endX, endY, excludedA, excludedB, found);
+        }
+
+        int column = column(startX);
+        int row = row(startY);
+        final int lastColumn = column(endX);
+        final int lastRow = row(endY);
+        final double dx = endX - startX;
+        final double dy = endY - startY;
+        final int stepColumn = dx > 0 ? 1 : -1;
+        final int stepRow = dy > 0 ? 1 : -1;
+        final double deltaX = dx != 0 ? CELL_SIZE / Math.abs(dx) : Double.POSITIVE_INFINITY;
+        final double deltaY = dy != 0 ? CELL_SIZE / Math.abs(dy) : Double.POSITIVE_INFINITY;
+        double nextX = dx != 0 ? ((column + (dx > 0 ? 1 : 0)) * CELL_SIZE - startX) / dx : Double.POSITIVE_INFINITY;
+        double nextY = dy != 0 ? ((row + (dy > 0 ? 1 : 0)) * CELL_SIZE - startY) / dy : Double.POSITIVE_INFINITY;
+
+        int previousColumn = Integer.MIN_VALUE;
+        int previousRow = Integer.MIN_VALUE;
+        boolean any = false;
+        int remainingSteps = Math.abs(lastColumn - column) + Math.abs(lastRow - row);
+        while (true) {
+            final int cell = row * columns + column;
+            for (int i = coverStart[cell]; i < coverStart[cell + 1]; ++i) {
+                final int slot = coverEntries[i];
+                if (slot == excludedA || slot == excludedB
+                        || (previousColumn >= minColumn[slot] && previousColumn <= maxColumn[slot]
+                            && previousRow >= minRow[slot] && previousRow <= maxRow[slot])) {
+                    continue;
+                }
+                if (Collision.segmentCircleIntersect(startX, startY, endX, endY, store.x(slot), store.y(slot),
+                                                     store.radius(slot), Constants.FORECAST_FUDGE_FACTOR)) {
+                    if (found == null) {
+                        return true;
+                    }
+                    found.add(slot);
+                    any = true;
+                }
+            }
+
+            if (remainingSteps-- <= 0) {
+                break;
+            }
+            previousColumn = column;
+            previousRow = row;
+            if (nextX < nextY) {
+                column += stepColumn;
+                nextX += deltaX;
+            } else {
+                row += stepRow;
+                nextY += deltaY;
+            }
+        }
+        return any;
+    }
+
+    private boolean bruteForce(final double startX, final double startY, final double endX, final double endY,
+                               final int excludedA, final int excludedB, final IntList found) {
+        boolean any = false;
+        for (int slot = 0; slot < store.size(); ++slot) {
+            if (slot == excludedA || slot == excludedB) {
+                continue;
+            }
+            if (Collision.segmentCircleIntersect(startX, startY, endX, endY, store.x(slot), store.y(slot),
+                                                 store.radius(slot), Constants.FORECAST_FUDGE_FACTOR)) {
+                if (found == null) {
+                    return true;
+                }
+                found.add(slot);
+                any = true;
+            }
+        }
+        return any;
+    }
+
+    private boolean insideGrid(final double xPos, final double yPos) {
+        return xPos >= 0 && yPos >= 0 && xPos < columns * CELL_SIZE && yPos < rows * CELL_SIZE;
+    }
+
+    public EntityStore getStore() {
+        return store;
+    }
+
+    /** Largest radius of any indexed entity, useful to inflate center-based queries. */
+    public double getMaxRadius() {
+        return maxRadius;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int column(final double xPos) {
+        return clamp((int) Math.floor(xPos / CELL_SIZE), columns);
+    }
+
+    public int row(final double yPos) {
+        return clamp((int) Math.floor(yPos / CELL_SIZE), rows);
+    }
+
+    public int cellOf(final double xPos, final double yPos) {
+        return row(yPos) * columns + column(xPos);
+    }
+
+    public int cellStart(final int cell) {
+        return cellStart[cell];
+    }
+
+    public int cellEnd(final int cell) {
+        return cellStart[cell + 1];
+    }
+
+    public int cellEntry(final int index) {
+        return cellEntries[index];
+    }
+
+    /**
+     * All entities whose center is at most radius away from the given position, in grid order.
+     */
+    public List<Entity> withinRadius(final Position position, final double radius, final Predicate<Entity> filter) {
+        refresh();
+        final List<Entity> found = new ArrayList<>();
+        final double xPos = position.getXPos();
+        final double yPos = position.getYPos();
+        final double radiusSquared = radius * radius;
+        final int excluded = store.slotOf(position);
+
+        final int minColumn = column(xPos - radius);
+        final int maxColumn = column(xPos + radius);
+        final int minRow = row(yPos - radius);
+        final int maxRow = row(yPos + radius);
+        for (int row = minRow; row <= maxRow; ++row) {
+            for (int column = minColumn; column <= maxColumn; ++column) {
+                final int cell = row * columns + column;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; ++i) {
+                    final int slot = cellEntries[i];
+                    if (slot != excluded && store.distanceSquared(slot, xPos, yPos) <= radiusSquared) {
+                        final Entity entity = store.entity(slot);
+                        if (filter == null || filter.test(entity)) {
+                            found.add(entity);
+                        }
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * The k entities closest to the given one, excluding itself, nearest first.
+     */
+    public List<Entity> kNearest(final Position position, final int k, final Predicate<Entity> filter) {
+        final List<Entity> found = new ArrayList<>(Math.min(k, 16));
+        final Iterator<Entity> iterator = byDistance(position, filter);
+        while (found.size() < k && iterator.hasNext()) {
+            found.add(iterator.next());
+        }
+        return found;
+    }
+
+    /**
+     * Lazily iterates over all entities except the given one, nearest first. Only as many grid rings
+     * as needed to produce the requested elements are scanned.
+     */
+    public DistanceIterator byDistance(final Position position, final Predicate<Entity> filter) {
+        refresh();
+        return new DistanceIterator(position, filter);
+    }
+
+    private static int clamp(final int value, final int size) {
+        return value < 0 ? 0 : (value >= size ? size - 1 : value);
+    }
+
+    public class DistanceIterator implements Iterator<Entity> {
+        private final double xPos;
+        private final double yPos;
+        private final int excluded;
+        private final int centerColumn;
+        private final int centerRow;
+        private final Predicate<Entity> filter;
+        private final int maxRing;
+        private int ring = -1;
+
+        // binary min-heap on (distance, slot)
+        private double[] distances = new double[16];
+        private int[] slots = new int[16];
+        private int heapSize;
+
+        private double lastDistance;
+
+        DistanceIterator(final Position position, final Predicate<Entity> filter) {
+            this.xPos = position.getXPos();
+            this.yPos = position.getYPos();
+            this.excluded = store.slotOf(position);
+            this.filter = filter;
+            centerColumn = column(xPos);
+            centerRow = row(yPos);
+            maxRing = Math.max(Math.max(centerColumn, columns - 1 - centerColumn),
+                               Math.max(centerRow, rows - 1 - centerRow));
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (true) {
+                if (heapSize > 0 && distances[0] <= guaranteedDistance()) {
+                    return true;
+                }
+                if (ring >= maxRing) {
+                    return heapSize > 0;
+                }
+                scanRing(++ring);
+            }
+        }
+
+        @Override
+        public Entity next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            lastDistance = distances[0];
+            final int slot = slots[0];
+            pop();
+            return store.entity(slot);
+        }
+
+        /** Distance between the query position and the center of the entity last returned by {@link #next()}. */
+        public double lastDistance() {
+            return lastDistance;
+        }
+
+        // Every entity outside the scanned rings is at least this far away.
+        private double guaranteedDistance() {
+            if (ring < 0) {
+                return -1;
+            }
+            if (ring >= maxRing) {
+                return Double.POSITIVE_INFINITY;
+            }
+            double bound = Double.POSITIVE_INFINITY;
+            if (centerColumn - ring > 0) {
+                bound = Math.min(bound, xPos - (centerColumn - ring) * CELL_SIZE);
+            }
+            if (centerColumn + ring < columns - 1) {
+                bound = Math.min(bound, (centerColumn + ring + 1) * CELL_SIZE - xPos);
+            }
+            if (centerRow - ring > 0) {
+                bound = Math.min(bound, yPos - (centerRow - ring) * CELL_SIZE);
+            }
+            if (centerRow + ring < rows - 1) {
+                bound = Math.min(bound, (centerRow + ring + 1) * CELL_SIZE - yPos);
+            }
+            return bound;
+        }
+
+        private void scanRing(final int r) {
+            for (int row = centerRow - r; row <= centerRow + r; ++row) {
+                if (row < 0 || row >= rows) {
+                    continue;
+                }
+                final boolean edgeRow = row == centerRow - r || row == centerRow + r;
+                final int step = edgeRow || r == 0 ? 1 : 2 * r;
+                for (int column = centerColumn - r; column <= centerColumn + r; column += step) {
+                    if (column >= 0 && column < columns) {
+                        scanCell(row * columns + column);
+                    }
+                }
+            }
+        }
+
+        private void scanCell(final int cell) {
+            for (int i = cellStart[cell]; i < cellStart[cell + 1]; ++i) {
+                final int slot = cellEntries[i];
+                if (slot == excluded) {
+                    continue;
+                }
+                if (filter != null && !filter.test(store.entity(slot))) {
+                    continue;
+                }
+                push(Math.sqrt(store.distanceSquared(slot, xPos, yPos)), slot);
+            }
+        }
+
+        private boolean less(final int a, final int b) {
+            return distances[a] < distances[b] || (distances[a] == distances[b] && slots[a] < slots[b]);
+        }
+
+        private void push(final double distance, final int slot) {
+            if (heapSize == slots.length) {
+                distances = Arrays.copyOf(distances, heapSize * 2);
+                slots = Arrays.copyOf(slots, heapSize * 2);
+            }
+            int i = heapSize++;
+            distances[i] = distance;
+            slots[i] = slot;
+            while (i > 0) {
+                final int parent = (i - 1) / 2;
+                if (!less(i, parent)) {
+                    break;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void pop() {
+            --heapSize;
+            distances[0] = distances[heapSize];
+            slots[0] = slots[heapSize];
+            int i = 0;
+            while (true) {
+                final int left = 2 * i + 1;
+                if (left >= heapSize) {
+                    break;
+                }
+                final int right = left + 1;
+                final int smallest = right < heapSize && less(right, left) ? right : left;
+                if (!less(smallest, i)) {
+                    break;
+                }
+                swap(i, smallest);
+                i = smallest;
+            }
+        }
+
+        private void swap(final int a, final int b) {
+            final double distance = distances[a];
+            distances[a] = distances[b];
+            distances[b] = distance;
+            final int slot = slots[a];
+            slots[a] = slots[b];
+            slots[b] = slot;
+        }
+    }
+}
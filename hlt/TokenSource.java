@@ -0,0 +1,13 @@
+package hlt;
+
+/**
+ * Sequential access to the numbers of an engine frame, whatever their representation.
+ */
+interface TokenSource {
+
+    int nextInt();
+
+    double nextDouble();
+
+    boolean isEmpty();
+}
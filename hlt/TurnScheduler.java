@@ -0,0 +1,356 @@
+package hlt;
+
+import utils.IntObjectMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps every turn within the engine's time limit.
+ *
+ * The clock starts when the first bytes of a frame arrive. A frame that was already waiting when the
+ * bot got to read it, e.g. after an overrun turn, may have arrived as early as the end of the last
+ * send, so the clock starts there. Each {@link Phase} has a budget, and strategies ask
+ * {@link #shouldStop(Phase)} between ships so they can stop early and leave the rest of their fleet
+ * to {@link #fallbackMove(GameMap, Ship)}: the ship's move from the last plan that was sent if it is
+ * still clear of planets, otherwise a Noop.
+ *
+ * Strategies report every move as they plan it through {@link #planned(Move)}. In case a phase does
+ * not stop in time, a watchdog thread sends these moves at the deadline, with fallback moves for
+ * the ships not planned yet. Moves go out through {@link #send(List)} only, which sends at most once
+ * per turn, so a late plan is dropped instead of desynchronizing the engine.
+ *
+ * Budgets default to {@link #DEFAULT_TURN_BUDGET_MILLIS} and {@link Phase#getDefaultBudgetMillis()},
+ * and can be overridden through the system properties {@code bot.turnBudgetMs} and
+ * {@code bot.phaseBudgetMs.<phase>}, e.g. {@code -Dbot.phaseBudgetMs.collision=100}.
+ */
+public class TurnScheduler {
+
+    /** The engine allows 2 seconds per turn; keep a margin for JIT and GC hiccups. */
+    public static final long DEFAULT_TURN_BUDGET_MILLIS = 1500;
+
+    public enum Phase {
+        /** Reading and parsing the frame, from its arrival. */
+        PARSE(100),
+        /** Choosing targets and planning moves, including navigation. */
+        STRATEGY(1000),
+        /** Time spent inside navigation calls, part of the strategy phase. */
+        NAVIGATION(800),
+        COLLISION(200),
+        SEND(50);
+
+        private final long defaultBudgetMillis;
+
+        Phase(final long defaultBudgetMillis) {
+            this.defaultBudgetMillis = defaultBudgetMillis;
+        }
+
+        public long getDefaultBudgetMillis() {
+            return defaultBudgetMillis;
+        }
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final long turnBudgetNanos;
+    private final long[] budgetNanos = new long[PHASES.length];
+    private final long[] spentNanos = new long[PHASES.length];
+    private final long[] overruns = new long[PHASES.length];
+    private final boolean watchdogEnabled;
+
+    private ScheduledExecutorService watchdog;
+    private ScheduledFuture<?> pendingFallback;
+    private GameRecorder recorder;
+
+    private final IntObjectMap<Move> lastPlan = new IntObjectMap<>();
+    private final IntObjectMap<Move> partialPlan = new IntObjectMap<>();
+
+    private int turn;
+    private boolean running;
+    private boolean sent;
+    private long turnStart;
+    private long lastSendNanos = -1;
+    private Phase phase;
+    private long phaseStart;
+    private int skippedShips;
+    private long turnOverruns;
+    private long fallbackTurns;
+
+    /**
+     * Scheduler with default phase budgets, no overall turn budget and no watchdog. It never asks to
+     * stop before {@link #startTurn(GameMap, long)} was called.
+     */
+    public TurnScheduler() {
+        this(Long.MAX_VALUE, null, false);
+    }
+
+    /**
+     * @param phaseBudgetMillis budget per phase in {@link Phase} order, or null for the defaults
+     * @param watchdog          whether to send fallback moves from a background thread at the deadline
+     */
+    public TurnScheduler(final long turnBudgetMillis, final long[] phaseBudgetMillis, final boolean watchdog) {
+        turnBudgetNanos = turnBudgetMillis == Long.MAX_VALUE ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(turnBudgetMillis);
+        for (final Phase p : PHASES) {
+            final long millis = phaseBudgetMillis == null ? p.getDefaultBudgetMillis() : phaseBudgetMillis[p.ordinal()];
+            budgetNanos[p.ordinal()] = TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+        watchdogEnabled = watchdog;
+    }
+
+    /**
+     * Reads the budgets from system properties, falling back to the defaults, with the watchdog on.
+     */
+    public static TurnScheduler fromSystemProperties() {
+        final long turnBudget = Long.getLong("bot.turnBudgetMs", DEFAULT_TURN_BUDGET_MILLIS);
+        final long[] phaseBudgets = new long[PHASES.length];
+        for (final Phase p : PHASES) {
+            phaseBudgets[p.ordinal()] = Long.getLong("bot.phaseBudgetMs." + p.name().toLowerCase(),
+                                                     p.getDefaultBudgetMillis());
+        }
+        return new TurnScheduler(turnBudget, phaseBudgets, true);
+    }
+
+    /**
+     * Starts the clock of a new turn at the arrival of the frame the reader read last, or at the end
+     * of the last send if the frame was already waiting.
+     */
+    public synchronized void startTurn(final GameMap gameMap, final FrameReader reader) {
+        long arrivalNanos = reader.getLastArrivalNanos();
+        if (reader.wasLastFrameWaiting() && lastSendNanos >= 0) {
+            arrivalNanos = Math.min(arrivalNanos, lastSendNanos);
+        }
+        startTurn(gameMap, arrivalNanos);
+    }
+
+    /**
+     * Starts the clock of a new turn, counting the time since the frame arrived as parse phase.
+     */
+    public synchronized void startTurn(final GameMap gameMap, final long arrivalNanos) {
+        ++turn;
+        running = true;
+        sent = false;
+        skippedShips = 0;
+        partialPlan.clear();
+        Arrays.fill(spentNanos, 0);
+        turnStart = arrivalNanos;
+        phase = Phase.PARSE;
+        phaseStart = arrivalNanos;
+        enter(Phase.STRATEGY);
+
+        if (watchdogEnabled && turnBudgetNanos != Long.MAX_VALUE) {
+            if (watchdog == null) {
+                watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    final Thread thread = new Thread(runnable, "turn-watchdog");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            final int scheduledTurn = turn;
+            final long delay = turnStart + turnBudgetNanos - System.nanoTime();
+            pendingFallback = watchdog.schedule(() -> sendFallback(gameMap, scheduledTurn),
+                                                Math.max(0, delay), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /** Ends the current phase and starts the given one. */
+    public synchronized void enter(final Phase next) {
+        final long now = System.nanoTime();
+        if (phase != null) {
+            spentNanos[phase.ordinal()] += now - phaseStart;
+        }
+        phase = next;
+        phaseStart = now;
+    }
+
+    /** Books time measured elsewhere, like navigation calls inside the strategy phase. */
+    public synchronized void addNanos(final Phase target, final long nanos) {
+        spentNanos[target.ordinal()] += nanos;
+    }
+
+    public synchronized long remainingNanos() {
+        if (!running || turnBudgetNanos == Long.MAX_VALUE) {
+            return Long.MAX_VALUE;
+        }
+        return turnStart + turnBudgetNanos - System.nanoTime();
+    }
+
+    /**
+     * @return whether work in the given phase should stop: its own budget is used up, or what is left
+     *         of the turn is needed by the phases after it
+     */
+    public synchronized boolean shouldStop(final Phase current) {
+        if (!running) {
+            return false;
+        }
+        if (sent || spent(current) >= budgetNanos[current.ordinal()]) {
+            return true;
+        }
+        if (current == Phase.STRATEGY && spent(Phase.NAVIGATION) >= budgetNanos[Phase.NAVIGATION.ordinal()]) {
+            return true;
+        }
+        long reserved = 0;
+        for (int p = current.ordinal() + 1; p < PHASES.length; ++p) {
+            if (PHASES[p] != Phase.NAVIGATION) {
+                reserved += budgetNanos[p];
+            }
+        }
+        return remainingNanos() < reserved;
+    }
+
+    /** Records a move of the plan in progress, to be sent for its ship should the deadline hit first. */
+    public synchronized void planned(final Move move) {
+        if (running) {
+            partialPlan.put(move.getShip().getId(), move);
+        }
+    }
+
+    /** Counts ships that got their fallback move because planning stopped early. */
+    public synchronized void skipped(final int ships) {
+        skippedShips += ships;
+    }
+
+    /**
+     * @return the ship's move from the last plan sent, repeated from its current position if that
+     *         stays clear of planets, or a Noop
+     */
+    public synchronized Move fallbackMove(final GameMap gameMap, final Ship ship) {
+        final Move last = lastPlan.get(ship.getId());
+        if (!(last instanceof ThrustMove) || ship.getDockingStatus() != Ship.DockingStatus.Undocked) {
+            return new Move(Move.MoveType.Noop, ship);
+        }
+        final ThrustMove thrustMove = (ThrustMove) last;
+        final double angleRad = Math.toRadians(thrustMove.getAngle());
+        final double endX = ship.getXPos() + thrustMove.getThrust() * Math.cos(angleRad);
+        final double endY = ship.getYPos() + thrustMove.getThrust() * Math.sin(angleRad);
+        if (endX < 0 || endY < 0 || endX >= gameMap.getWidth() || endY >= gameMap.getHeight()) {
+            return new Move(Move.MoveType.Noop, ship);
+        }
+        final IntObjectMap<Planet> planets = gameMap.getPlanetMap();
+        for (int p = 0; p < planets.size(); ++p) {
+            final Planet planet = planets.valueAt(p);
+            if (Collision.segmentCircleIntersect(ship.getXPos(), ship.getYPos(), endX, endY, planet.getXPos(),
+                                                 planet.getYPos(), planet.getRadius(), Constants.FORECAST_FUDGE_FACTOR)) {
+                return new Move(Move.MoveType.Noop, ship);
+            }
+        }
+        return new ThrustMove(ship, thrustMove.getAngle(), thrustMove.getThrust());
+    }
+
+    /**
+     * Sends the moves unless the watchdog already sent fallback moves this turn, then ends the turn.
+     *
+     * @return whether the moves were sent
+     */
+    public synchronized boolean send(final List<Move> moves) {
+        enter(Phase.SEND);
+        final boolean sending = !sent;
+        if (sending) {
+            transmit(moves);
+        } else {
+            Log.warn(() -> String.format("Dropped plan of %d moves, fallback moves were sent at the deadline.", moves.size()));
+        }
+        endTurn();
+        return sending;
+    }
+
+    /** Commits every turn to the recorder, with its phase timings, once its moves are sent. */
+    public synchronized void setRecorder(final GameRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    public int getTurn() {
+        return turn;
+    }
+
+    public synchronized long getOverruns(final Phase target) {
+        return overruns[target.ordinal()];
+    }
+
+    public synchronized long getTurnOverruns() {
+        return turnOverruns;
+    }
+
+    /** Turns in which the watchdog had to send fallback moves. */
+    public synchronized long getFallbackTurns() {
+        return fallbackTurns;
+    }
+
+    private long spent(final Phase target) {
+        long nanos = spentNanos[target.ordinal()];
+        if (target == phase) {
+            nanos += System.nanoTime() - phaseStart;
+        }
+        return nanos;
+    }
+
+    private void transmit(final List<Move> moves) {
+        sent = true;
+        Networking.sendMoves(moves);
+        lastSendNanos = System.nanoTime();
+        lastPlan.clear();
+        for (final Move move : moves) {
+            lastPlan.put(move.getShip().getId(), move);
+        }
+    }
+
+    private synchronized void sendFallback(final GameMap gameMap, final int scheduledTurn) {
+        if (sent || turn != scheduledTurn) {
+            return;
+        }
+        final List<Move> moves = new ArrayList<>();
+        final IntObjectMap<Ship> myShips = gameMap.getMyPlayer().getShipMap();
+        for (int s = 0; s < myShips.size(); ++s) {
+            final Move move = partialPlan.get(myShips.keyAt(s));
+            moves.add(move != null ? move : fallbackMove(gameMap, myShips.valueAt(s)));
+        }
+        ++fallbackTurns;
+        final int planned = partialPlan.size();
+        Log.warn(() -> String.format("Deadline reached in %s phase, sending %d planned and %d fallback moves.",
+                                     phase, planned, moves.size() - planned));
+        transmit(moves);
+    }
+
+    private void endTurn() {
+        enter(null);
+        running = false;
+        if (pendingFallback != null) {
+            pendingFallback.cancel(false);
+            pendingFallback = null;
+        }
+
+        if (recorder != null) {
+            recorder.commitTurn(spentNanos);
+        }
+
+        final StringBuilder report = new StringBuilder("Turn timing:");
+        boolean overrun = false;
+        for (final Phase p : PHASES) {
+            final long spentMillis = TimeUnit.NANOSECONDS.toMillis(spentNanos[p.ordinal()]);
+            report.append(' ').append(p).append('=').append(spentMillis).append("ms");
+            if (spentNanos[p.ordinal()] > budgetNanos[p.ordinal()]) {
+                ++overruns[p.ordinal()];
+                report.append("(over ").append(TimeUnit.NANOSECONDS.toMillis(budgetNanos[p.ordinal()])).append("ms)");
+                overrun = true;
+            }
+        }
+        final long total = System.nanoTime() - turnStart;
+        report.append(", total=").append(TimeUnit.NANOSECONDS.toMillis(total)).append("ms");
+        if (turnBudgetNanos != Long.MAX_VALUE && total > turnBudgetNanos) {
+            ++turnOverruns;
+            report.append("(over ").append(TimeUnit.NANOSECONDS.toMillis(turnBudgetNanos)).append("ms)");
+            overrun = true;
+        }
+        if (skippedShips > 0) {
+            report.append(", ").append(skippedShips).append(" ships on fallback moves");
+        }
+        if (overrun) {
+            report.append(" OVERRUN");
+        }
+        Log.log(overrun ? Log.Level.WARN : Log.Level.INFO, report.toString());
+    }
+}
@@ -0,0 +1,144 @@
+package replay;
+
+import hlt.GameRecorder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The frames of one game, loaded into memory from either a {@link GameRecorder} file or the
+ * engine's text input: the player id line, the map size line and one line per frame.
+ * <p>
+ * Turn 0 is the pre-game frame. Recorder files also hold the moves sent and the phase timings
+ * of every committed turn; for text input these are null.
+ */
+public class Recording {
+	private final int myId;
+	private final int width;
+	private final int height;
+	private final String botName;
+	private final List<byte[]> frames = new ArrayList<>();
+	private final List<byte[]> moves = new ArrayList<>();
+	private final List<long[]> phaseNanos = new ArrayList<>();
+
+	private Recording(int myId, int width, int height, String botName) {
+		this.myId = myId;
+		this.width = width;
+		this.height = height;
+		this.botName = botName;
+	}
+
+	public static Recording load(Path path) throws IOException {
+		byte[] bytes = Files.readAllBytes(path);
+		ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		if (bytes.length >= GameRecorder.DATA_OFFSET && buffer.getInt(0) == GameRecorder.MAGIC) return fromRecorder(buffer);
+		return fromText(bytes);
+	}
+
+	private static Recording fromRecorder(ByteBuffer buffer) throws IOException {
+		if (buffer.getInt(4) != GameRecorder.VERSION) throw new IOException("Unsupported recording version " + buffer.getInt(4));
+		byte[] name = new byte[buffer.getShort(20)];
+		for (int i = 0; i < name.length; i++) name[i] = buffer.get(22 + i);
+		Recording recording = new Recording(buffer.getInt(8), buffer.getInt(12), buffer.getInt(16), new String(name, StandardCharsets.US_ASCII));
+
+		int turns = buffer.getInt(GameRecorder.TURN_COUNT_POSITION);
+		for (int turn = 0; turn < turns; turn++) {
+			int offset = (int) buffer.getLong(GameRecorder.INDEX_OFFSET + 8 * turn);
+			// turns are committed in order, so the first gap ends the game
+			if (offset < GameRecorder.DATA_OFFSET) break;
+			int end = offset + 4 + buffer.getInt(offset);
+			if (buffer.getInt(offset + 4) != turn || buffer.getInt(end - 4) != GameRecorder.COMMIT) {
+				throw new IOException("Corrupt record of turn " + turn);
+			}
+			int position = offset + 8;
+			byte[] frame = new byte[buffer.getInt(position)];
+			buffer.position(position + 4);
+			buffer.get(frame);
+			position += 4 + frame.length;
+			byte[] sent = new byte[buffer.getInt(position)];
+			buffer.position(position + 4);
+			buffer.get(sent);
+			position += 4 + sent.length;
+			long[] nanos = new long[buffer.getInt(position)];
+			position += 4;
+			for (int p = 0; p < nanos.length; p++, position += 8) nanos[p] = buffer.getLong(position);
+
+			recording.frames.add(frame);
+			recording.moves.add(turn == 0 ? null : sent);
+			recording.phaseNanos.add(nanos.length == 0 ? null : nanos);
+		}
+		return recording;
+	}
+
+	private static Recording fromText(byte[] bytes) throws IOException {
+		List<byte[]> lines = new ArrayList<>();
+		int start = 0;
+		for (int i = 0; i <= bytes.length; i++) {
+			if (i < bytes.length && bytes[i] != '\n') continue;
+			int end = i > start && bytes[i - 1] == '\r' ? i - 1 : i;
+			if (end > start) {
+				byte[] line = new byte[end - start];
+				System.arraycopy(bytes, start, line, 0, line.length);
+				lines.add(line);
+			}
+			start = i + 1;
+		}
+		if (lines.size() < 3) throw new IOException("Expected player id, map size and at least one frame");
+
+		String[] size = new String(lines.get(1), StandardCharsets.US_ASCII).trim().split(" ");
+		Recording recording = new Recording(Integer.parseInt(new String(lines.get(0), StandardCharsets.US_ASCII).trim()),
+				Integer.parseInt(size[0]), Integer.parseInt(size[1]), null);
+		for (byte[] frame : lines.subList(2, lines.size())) {
+			recording.frames.add(frame);
+			recording.moves.add(null);
+			recording.phaseNanos.add(null);
+		}
+		return recording;
+	}
+
+	public int getMyId() {
+		return myId;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/** The bot name from the recorder header, or null for text input. */
+	public String getBotName() {
+		return botName;
+	}
+
+	public int getTurnCount() {
+		return frames.size();
+	}
+
+	public byte[] getFrame(int turn) {
+		return frames.get(turn);
+	}
+
+	/** The encoded move line sent in the turn, or null if not recorded. */
+	public byte[] getMoves(int turn) {
+		return moves.get(turn);
+	}
+
+	/** Nanos per {@link hlt.TurnScheduler.Phase} spent in the recorded game, or null. */
+	public long[] getPhaseNanos(int turn) {
+		return phaseNanos.get(turn);
+	}
+
+	public boolean hasMoves() {
+		for (byte[] sent : moves) if (sent != null) return true;
+		return false;
+	}
+}
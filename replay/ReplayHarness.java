@@ -0,0 +1,203 @@
+package replay;
+
+import hlt.FrameParser;
+import hlt.GameMap;
+import hlt.Log;
+import hlt.Move;
+import hlt.MoveEncoder;
+import strategy.AbstractStrategy;
+import strategy.StrategyFactory;
+import strategy.StrategyParameters;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Plays a recorded game through the bot in-process, without the engine.
+ * <p>
+ * Every frame goes through {@link GameMap#updateMap(FrameParser)} and the turn's strategy, as in
+ * {@code MyBot}, and the time of each turn is measured. With several runs, the first one warms
+ * up the JIT and is left out of the statistics. With {@code --diff}, the moves of the last run are
+ * compared to the moves sent in the recorded game.
+ * <p>
+ * Usage: {@code java replay.ReplayHarness <recording> [--runs n] [--strategy balanced|aggressive|mining]
+ * [--seed n] [--diff] [--log level]}. The recording is either a file written with {@code -Dbot.record}
+ * or the engine's text input. Without {@code --strategy}, {@link StrategyFactory} chooses as in a real
+ * game; pass the seed the recorded game logged to make it choose the same.
+ */
+public class ReplayHarness {
+	private static final int MAX_LISTED_DIFFS = 10;
+
+	private final Recording recording;
+	private final String strategyName;
+	private final FrameParser frameParser = new FrameParser();
+	private final MoveEncoder moveEncoder = new MoveEncoder();
+
+	private long[] turnNanos;
+	private int differingTurns;
+	private int differingMoves;
+	private final StringBuilder diffReport = new StringBuilder();
+
+	public ReplayHarness(Recording recording, String strategyName) {
+		this.recording = recording;
+		this.strategyName = strategyName;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("Usage: java replay.ReplayHarness <recording> [--runs n] [--strategy balanced|aggressive|mining] [--seed n] [--diff] [--log level]");
+			System.exit(2);
+		}
+		int runs = 1;
+		String strategyName = null;
+		boolean diff = false;
+		Log.setLevel(Log.Level.OFF);
+		for (int i = 1; i < args.length; i++) {
+			switch (args[i]) {
+				case "--runs": runs = Integer.parseInt(args[++i]); break;
+				case "--strategy": strategyName = args[++i]; break;
+				case "--seed": System.setProperty("bot.seed", args[++i]); break;
+				case "--diff": diff = true; break;
+				case "--log": Log.setLevel(Log.Level.valueOf(args[++i].toUpperCase())); break;
+				default: throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+
+		Recording recording = Recording.load(Paths.get(args[0]));
+		ReplayHarness harness = new ReplayHarness(recording, strategyName);
+		long[] measured = new long[0];
+		long start = System.nanoTime();
+		for (int run = 0; run < runs; run++) {
+			harness.run(diff && run == runs - 1);
+			// the first of several runs only warms up
+			if (run > 0 || runs == 1) measured = concat(measured, harness.turnNanos);
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		System.out.printf("Replayed %d turns of player %d on %dx%d, %d run(s) in %.2f s (%.0f turns/s)%n",
+				recording.getTurnCount() - 1, recording.getMyId(), recording.getWidth(), recording.getHeight(),
+				runs, seconds, runs * (recording.getTurnCount() - 1) / seconds);
+		System.out.println("replayed " + percentiles(measured));
+		long[] recorded = harness.recordedTurnNanos();
+		if (recorded.length > 0) System.out.println("recorded " + percentiles(recorded));
+		if (diff) System.out.print(harness.diffSummary());
+	}
+
+	/**
+	 * Plays the whole recording once on a fresh map and strategy.
+	 */
+	public void run(boolean diff) {
+		int turns = recording.getTurnCount();
+		turnNanos = new long[Math.max(0, turns - 1)];
+		differingTurns = 0;
+		differingMoves = 0;
+		diffReport.setLength(0);
+
+		GameMap gameMap = new GameMap(recording.getWidth(), recording.getHeight(), recording.getMyId());
+		byte[] preGame = recording.getFrame(0);
+		gameMap.updateMap(frameParser.reset(preGame, preGame.length));
+		gameMap.buildRoadmap();
+
+		AbstractStrategy strategy = null;
+		List<Move> lastMoves = new LinkedList<>();
+		for (int turn = 1; turn < turns; turn++) {
+			byte[] frame = recording.getFrame(turn);
+			long start = System.nanoTime();
+			gameMap.updateMap(frameParser.reset(frame, frame.length));
+			strategy = strategyName == null ? StrategyFactory.chooseStrategy(gameMap, lastMoves, strategy) : forcedStrategy(gameMap, strategy);
+			lastMoves = strategy.apply();
+			moveEncoder.encode(lastMoves);
+			turnNanos[turn - 1] = System.nanoTime() - start;
+
+			if (diff && recording.getMoves(turn) != null) diff(turn, recording.getMoves(turn));
+		}
+	}
+
+	public long[] getTurnNanos() {
+		return turnNanos;
+	}
+
+	/** Total phase time of every recorded turn that has timings. */
+	public long[] recordedTurnNanos() {
+		long[] nanos = new long[recording.getTurnCount()];
+		int count = 0;
+		for (int turn = 1; turn < recording.getTurnCount(); turn++) {
+			long[] phases = recording.getPhaseNanos(turn);
+			if (phases != null) nanos[count++] = Arrays.stream(phases).sum();
+		}
+		return Arrays.copyOf(nanos, count);
+	}
+
+	public String diffSummary() {
+		if (!recording.hasMoves()) return "No recorded moves to compare with.\n";
+		return String.format("%d turns with %d differing moves%s%n%s", differingTurns, differingMoves,
+				differingTurns == 0 ? "" : ", first ones:", diffReport);
+	}
+
+	private AbstractStrategy forcedStrategy(GameMap gameMap, AbstractStrategy current) {
+		if (current != null) return current;
+		return StrategyFactory.createStrategy(strategyName, gameMap, StrategyParameters.DEFAULT);
+	}
+
+	private void diff(int turn, byte[] recordedMoves) {
+		Map<String, String> expected = parseMoves(new String(recordedMoves, StandardCharsets.US_ASCII));
+		Map<String, String> actual = parseMoves(new String(moveEncoder.getBytes(), 0, moveEncoder.getLength(), StandardCharsets.US_ASCII));
+		int before = differingMoves;
+		for (Map.Entry<String, String> move : expected.entrySet()) {
+			String replayed = actual.get(move.getKey());
+			if (!move.getValue().equals(replayed)) report(turn, move.getValue(), replayed);
+		}
+		for (Map.Entry<String, String> move : actual.entrySet()) {
+			if (!expected.containsKey(move.getKey())) report(turn, null, move.getValue());
+		}
+		if (differingMoves > before) differingTurns++;
+	}
+
+	private void report(int turn, String expected, String actual) {
+		if (differingMoves++ < MAX_LISTED_DIFFS) {
+			diffReport.append(String.format("  turn %d: recorded [%s], replayed [%s]%n",
+					turn, Objects.toString(expected, "none"), Objects.toString(actual, "none")));
+		}
+	}
+
+	// ship id -> move, from an encoded move line
+	private static Map<String, String> parseMoves(String line) {
+		Map<String, String> moves = new LinkedHashMap<>();
+		String[] tokens = line.trim().split("\\s+");
+		for (int i = 0; i < tokens.length && !tokens[i].isEmpty(); ) {
+			int length = tokens[i].equals("t") ? 4 : tokens[i].equals("d") ? 3 : 2;
+			length = Math.min(length, tokens.length - i);
+			moves.put(tokens[i + Math.min(1, length - 1)], String.join(" ", Arrays.copyOfRange(tokens, i, i + length)));
+			i += length;
+		}
+		return moves;
+	}
+
+	private static String percentiles(long[] nanos) {
+		if (nanos.length == 0) return "latency: no turns";
+		long[] sorted = nanos.clone();
+		Arrays.sort(sorted);
+		return String.format("latency: p50=%.2f ms, p90=%.2f ms, p99=%.2f ms, max=%.2f ms, mean=%.2f ms over %d turns",
+				percentile(sorted, 0.5), percentile(sorted, 0.9), percentile(sorted, 0.99), sorted[sorted.length - 1] / 1e6,
+				Arrays.stream(sorted).average().orElse(0) / 1e6, sorted.length);
+	}
+
+	// nearest rank
+	private static double percentile(long[] sorted, double fraction) {
+		int rank = (int) Math.ceil(fraction * sorted.length);
+		return sorted[Math.max(0, rank - 1)] / 1e6;
+	}
+
+	private static long[] concat(long[] a, long[] b) {
+		long[] joined = Arrays.copyOf(a, a.length + b.length);
+		System.arraycopy(b, 0, joined, a.length, b.length);
+		return joined;
+	}
+}
@@ -0,0 +1,91 @@
+package sim;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes space-separated numbers as ASCII into a reusable byte buffer, in the format
+ * {@link hlt.FrameParser} reads. Coordinates get four decimals, like the engine's.
+ */
+public class FrameWriter {
+	private static final long DECIMALS = 10_000;
+
+	private byte[] bytes = new byte[4096];
+	private int length;
+
+	public FrameWriter clear() {
+		length = 0;
+		return this;
+	}
+
+	public FrameWriter put(long value) {
+		ensureCapacity(21);
+		if (length > 0) bytes[length++] = ' ';
+		if (value < 0) {
+			bytes[length++] = '-';
+			value = -value;
+		}
+		if (value <= Integer.MAX_VALUE) putDigits((int) value);
+		else putDigits(value);
+		return this;
+	}
+
+	public FrameWriter put(double value) {
+		ensureCapacity(28);
+		if (length > 0) bytes[length++] = ' ';
+		long fixed = Math.round(value * DECIMALS);
+		if (fixed < 0) {
+			bytes[length++] = '-';
+			fixed = -fixed;
+		}
+		long whole = fixed / DECIMALS;
+		if (whole <= Integer.MAX_VALUE) putDigits((int) whole);
+		else putDigits(whole);
+		int fraction = (int) (fixed - whole * DECIMALS);
+		bytes[length] = '.';
+		bytes[length + 1] = (byte) ('0' + fraction / 1000);
+		bytes[length + 2] = (byte) ('0' + fraction / 100 % 10);
+		bytes[length + 3] = (byte) ('0' + fraction / 10 % 10);
+		bytes[length + 4] = (byte) ('0' + fraction % 10);
+		length += 5;
+		return this;
+	}
+
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	@Override
+	public String toString() {
+		return new String(bytes, 0, length, StandardCharsets.US_ASCII);
+	}
+
+	// int arithmetic covers almost every number of a frame and is much cheaper than long
+	private void putDigits(int value) {
+		int end = length + 1;
+		for (int rest = value / 10; rest > 0; rest /= 10) end++;
+		length = end;
+		do {
+			bytes[--end] = (byte) ('0' + value % 10);
+			value /= 10;
+		} while (value > 0);
+	}
+
+	private void putDigits(long value) {
+		int end = length + 1;
+		for (long rest = value / 10; rest > 0; rest /= 10) end++;
+		length = end;
+		do {
+			bytes[--end] = (byte) ('0' + value % 10);
+			value /= 10;
+		} while (value > 0);
+	}
+
+	private void ensureCapacity(int extra) {
+		if (length + extra > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+	}
+}
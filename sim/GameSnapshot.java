@@ -0,0 +1,536 @@
+package sim;
+
+import hlt.GameMap;
+import hlt.Planet;
+import hlt.Ship;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Game state with copy-on-write structural sharing, for lookahead and speculative planning.
+ * <p>
+ * Ships are indexed by id in a two-level tree: the root points to inner nodes of 32 leaves, and a
+ * leaf holds 32 ships in primitive arrays. {@link #fork()} is O(1), as parent and fork share the
+ * whole tree. The first change to a ship afterwards copies the root, the inner node and the leaf on
+ * its path, so a branch holds copies of the leaves of the ships it modified and shares everything
+ * else. Later changes within the same leaf write in place. Planets are few and their mutable state
+ * is copied as a whole on a branch's first planet change, while positions and sizes are shared
+ * by every snapshot.
+ * <p>
+ * A snapshot is not safe for concurrent modification, but forks are independent of each other:
+ * hand a fork to another thread and both can go on changing their own state.
+ * {@link #getOwnedBytes()} is the memory a snapshot has copied for itself since it was created or
+ * last forked, and {@link #memoryReport(Collection)} sums up a set of snapshots.
+ * {@link Simulator#fromSnapshot(GameSnapshot)} steps a branch forward.
+ */
+public class GameSnapshot {
+	private static final int BITS = 5;
+	private static final int WIDTH = 1 << BITS;
+	private static final int MASK = WIDTH - 1;
+
+	// estimated heap sizes with compressed references
+	private static final long ARRAY_HEADER_BYTES = 16;
+	private static final long LEAF_BYTES = 48 + 5 * (ARRAY_HEADER_BYTES + 4L * WIDTH) + 2 * (ARRAY_HEADER_BYTES + 8L * WIDTH);
+	private static final long INNER_BYTES = 24 + ARRAY_HEADER_BYTES + 4L * WIDTH;
+	private static final long SNAPSHOT_BYTES = 80;
+
+	private final int width;
+	private final int height;
+	private final int players;
+	private int turn;
+
+	// the state this snapshot may write in place is tagged with its editor
+	private Object editor = new Object();
+	private Inner[] root;
+	private boolean rootOwned;
+	private int shipCount;
+	private int[] shipsByPlayer;
+
+	private final Planets shared;
+	private int[] planetOwner;
+	private int[] planetHealth;
+	private int[] production;
+	private boolean planetsOwned;
+
+	private long ownedBytes;
+
+	private static final class Leaf {
+		final Object editor;
+		final int[] owner;
+		final double[] x;
+		final double[] y;
+		final int[] health;
+		final int[] status;
+		final int[] dockedPlanet;
+		final int[] progress;
+
+		Leaf(Object editor) {
+			this.editor = editor;
+			owner = new int[WIDTH];
+			x = new double[WIDTH];
+			y = new double[WIDTH];
+			health = new int[WIDTH];
+			status = new int[WIDTH];
+			dockedPlanet = new int[WIDTH];
+			progress = new int[WIDTH];
+		}
+
+		Leaf(Object editor, Leaf other) {
+			this.editor = editor;
+			owner = other.owner.clone();
+			x = other.x.clone();
+			y = other.y.clone();
+			health = other.health.clone();
+			status = other.status.clone();
+			dockedPlanet = other.dockedPlanet.clone();
+			progress = other.progress.clone();
+		}
+	}
+
+	private static final class Inner {
+		final Object editor;
+		final Leaf[] leaves;
+
+		Inner(Object editor, Leaf[] leaves) {
+			this.editor = editor;
+			this.leaves = leaves;
+		}
+	}
+
+	// planet attributes that never change during a game
+	private static final class Planets {
+		final int[] id;
+		final double[] x;
+		final double[] y;
+		final double[] radius;
+		final int[] spots;
+		final int[] remaining;
+		int[] indexById;
+
+		Planets(int count) {
+			id = new int[count];
+			x = new double[count];
+			y = new double[count];
+			radius = new double[count];
+			spots = new int[count];
+			remaining = new int[count];
+		}
+	}
+
+	private GameSnapshot(int width, int height, int players, Planets planets) {
+		this.width = width;
+		this.height = height;
+		this.players = players;
+		this.shared = planets;
+		root = new Inner[0];
+		rootOwned = true;
+		shipsByPlayer = new int[players];
+		planetOwner = new int[planets.id.length];
+		planetHealth = new int[planets.id.length];
+		production = new int[planets.id.length];
+		planetsOwned = true;
+	}
+
+	private GameSnapshot(GameSnapshot parent) {
+		width = parent.width;
+		height = parent.height;
+		players = parent.players;
+		turn = parent.turn;
+		root = parent.root;
+		shipCount = parent.shipCount;
+		shipsByPlayer = parent.shipsByPlayer;
+		shared = parent.shared;
+		planetOwner = parent.planetOwner;
+		planetHealth = parent.planetHealth;
+		production = parent.production;
+	}
+
+	/**
+	 * Captures the current state of the map.
+	 */
+	public static GameSnapshot of(GameMap gameMap) {
+		Collection<Planet> planets = gameMap.getAllPlanets().values();
+		Planets shared = new Planets(planets.size());
+		int index = 0;
+		int maxId = -1;
+		for (Planet planet : planets) {
+			shared.id[index] = planet.getId();
+			shared.x[index] = planet.getXPos();
+			shared.y[index] = planet.getYPos();
+			shared.radius[index] = planet.getRadius();
+			shared.spots[index] = planet.getDockingSpots();
+			shared.remaining[index] = planet.getRemainingProduction();
+			maxId = Math.max(maxId, planet.getId());
+			index++;
+		}
+		shared.indexById = new int[maxId + 1];
+		Arrays.fill(shared.indexById, -1);
+		for (int p = 0; p < shared.id.length; p++) shared.indexById[shared.id[p]] = p;
+
+		GameSnapshot snapshot = new GameSnapshot(gameMap.getWidth(), gameMap.getHeight(), gameMap.getAllPlayers().size(), shared);
+		index = 0;
+		for (Planet planet : planets) {
+			snapshot.planetOwner[index] = planet.isOwned() ? planet.getOwner() : -1;
+			snapshot.planetHealth[index] = planet.getHealth();
+			snapshot.production[index] = planet.getCurrentProduction();
+			index++;
+		}
+		for (Ship ship : gameMap.getAllShips()) {
+			snapshot.addShip(ship.getId(), ship.getOwner(), ship.getXPos(), ship.getYPos(), ship.getHealth());
+			snapshot.setDocking(ship.getId(), ship.getDockingStatus().ordinal(), ship.getDockedPlanet(), ship.getDockingProgress());
+		}
+		return snapshot;
+	}
+
+	/**
+	 * @return a snapshot sharing all state with this one; changes to either are not seen by the other
+	 */
+	public GameSnapshot fork() {
+		// neither side may write shared nodes in place from now on
+		editor = new Object();
+		rootOwned = false;
+		planetsOwned = false;
+		// everything this snapshot held is shared with the fork now
+		ownedBytes = 0;
+		return new GameSnapshot(this);
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getPlayers() {
+		return players;
+	}
+
+	public int getTurn() {
+		return turn;
+	}
+
+	public void setTurn(int turn) {
+		this.turn = turn;
+	}
+
+	public int getShipCount() {
+		return shipCount;
+	}
+
+	public int getShipCount(int player) {
+		return shipsByPlayer[player];
+	}
+
+	/**
+	 * @return the smallest id of a ship in the snapshot that is at least the given one, or -1
+	 */
+	public int nextShip(int fromId) {
+		for (int id = Math.max(0, fromId); id < root.length << 2 * BITS; ) {
+			Inner inner = root[id >>> 2 * BITS];
+			if (inner == null) {
+				id = ((id >>> 2 * BITS) + 1) << 2 * BITS;
+				continue;
+			}
+			Leaf leaf = inner.leaves[(id >>> BITS) & MASK];
+			if (leaf == null) {
+				id = ((id >>> BITS) + 1) << BITS;
+				continue;
+			}
+			if (leaf.health[id & MASK] > 0) return id;
+			id++;
+		}
+		return -1;
+	}
+
+	public boolean hasShip(int id) {
+		Leaf leaf = leaf(id);
+		return leaf != null && leaf.health[id & MASK] > 0;
+	}
+
+	public int getOwner(int ship) {
+		return existing(ship).owner[ship & MASK];
+	}
+
+	public double getX(int ship) {
+		return existing(ship).x[ship & MASK];
+	}
+
+	public double getY(int ship) {
+		return existing(ship).y[ship & MASK];
+	}
+
+	public int getHealth(int ship) {
+		Leaf leaf = leaf(ship);
+		return leaf == null ? 0 : leaf.health[ship & MASK];
+	}
+
+	/** @return the docking status, as the ordinal of {@link Ship.DockingStatus} */
+	public int getDockingStatus(int ship) {
+		return existing(ship).status[ship & MASK];
+	}
+
+	public int getDockedPlanet(int ship) {
+		return existing(ship).dockedPlanet[ship & MASK];
+	}
+
+	public int getDockingProgress(int ship) {
+		return existing(ship).progress[ship & MASK];
+	}
+
+	public void addShip(int id, int owner, double x, double y, int health) {
+		if (hasShip(id)) throw new IllegalArgumentException("Ship " + id + " exists");
+		if (health <= 0) return;
+		Leaf leaf = writableLeaf(id);
+		int i = id & MASK;
+		leaf.owner[i] = owner;
+		leaf.x[i] = x;
+		leaf.y[i] = y;
+		leaf.health[i] = health;
+		leaf.status[i] = 0;
+		leaf.dockedPlanet[i] = 0;
+		leaf.progress[i] = 0;
+		shipCount++;
+		shipsByPlayer[owner]++;
+	}
+
+	public void moveShip(int ship, double x, double y) {
+		existing(ship);
+		Leaf leaf = writableLeaf(ship);
+		leaf.x[ship & MASK] = x;
+		leaf.y[ship & MASK] = y;
+	}
+
+	/**
+	 * Moves the ship the way a thrust command would, without checking for collisions.
+	 */
+	public void thrust(int ship, int thrust, int angleDeg) {
+		double angle = Math.toRadians(angleDeg);
+		moveShip(ship, getX(ship) + thrust * Math.cos(angle), getY(ship) + thrust * Math.sin(angle));
+	}
+
+	/**
+	 * Takes the damage off the ship's health and removes the ship once it has none left.
+	 */
+	public void damageShip(int ship, int damage) {
+		int owner = getOwner(ship);
+		Leaf leaf = writableLeaf(ship);
+		leaf.health[ship & MASK] = Math.max(0, leaf.health[ship & MASK] - damage);
+		if (leaf.health[ship & MASK] > 0) return;
+		shipCount--;
+		shipsByPlayer[owner]--;
+	}
+
+	public void setDocking(int ship, int status, int planet, int progress) {
+		existing(ship);
+		Leaf leaf = writableLeaf(ship);
+		leaf.status[ship & MASK] = status;
+		leaf.dockedPlanet[ship & MASK] = planet;
+		leaf.progress[ship & MASK] = progress;
+	}
+
+	public int getPlanetCount() {
+		return shared.id.length;
+	}
+
+	/** @return the id of the planet at the given index */
+	public int getPlanetId(int index) {
+		return shared.id[index];
+	}
+
+	/** @return the index of the planet with the given id, or -1 */
+	public int planetIndex(int planetId) {
+		return planetId >= 0 && planetId < shared.indexById.length ? shared.indexById[planetId] : -1;
+	}
+
+	public double getPlanetX(int index) {
+		return shared.x[index];
+	}
+
+	public double getPlanetY(int index) {
+		return shared.y[index];
+	}
+
+	public double getPlanetRadius(int index) {
+		return shared.radius[index];
+	}
+
+	public int getDockingSpots(int index) {
+		return shared.spots[index];
+	}
+
+	public int getRemainingProduction(int index) {
+		return shared.remaining[index];
+	}
+
+	public int getPlanetOwner(int index) {
+		return planetOwner[index];
+	}
+
+	public int getPlanetHealth(int index) {
+		return planetHealth[index];
+	}
+
+	public int getProduction(int index) {
+		return production[index];
+	}
+
+	/** @param owner the new owner, or -1 for none */
+	public void setPlanetOwner(int index, int owner) {
+		ownPlanets();
+		planetOwner[index] = owner;
+	}
+
+	public void damagePlanet(int index, int damage) {
+		ownPlanets();
+		planetHealth[index] = Math.max(0, planetHealth[index] - damage);
+	}
+
+	public void setProduction(int index, int value) {
+		ownPlanets();
+		production[index] = value;
+	}
+
+	/**
+	 * Writes the snapshot as an engine frame, for a {@link GameMap}.
+	 */
+	public FrameWriter writeFrame(FrameWriter out) {
+		out.clear().put(players);
+		for (int player = 0; player < players; player++) {
+			out.put(player).put(shipsByPlayer[player]);
+			for (int id = nextShip(0); id >= 0; id = nextShip(id + 1)) {
+				Leaf leaf = leaf(id);
+				int i = id & MASK;
+				if (leaf.owner[i] != player) continue;
+				out.put(id).put(leaf.x[i]).put(leaf.y[i]).put(leaf.health[i]).put(0.0).put(0.0)
+						.put(leaf.status[i]).put(leaf.dockedPlanet[i]).put(leaf.progress[i]).put(0);
+			}
+		}
+		int alive = 0;
+		for (int p = 0; p < shared.id.length; p++) if (planetHealth[p] > 0) alive++;
+		out.put(alive);
+		for (int p = 0; p < shared.id.length; p++) {
+			if (planetHealth[p] <= 0) continue;
+			int docked = 0;
+			for (int id = nextShip(0); id >= 0; id = nextShip(id + 1)) if (isDockedAt(id, p)) docked++;
+			out.put(shared.id[p]).put(shared.x[p]).put(shared.y[p]).put(planetHealth[p]).put(shared.radius[p])
+					.put(shared.spots[p]).put(production[p]).put(shared.remaining[p])
+					.put(planetOwner[p] >= 0 ? 1 : 0).put(Math.max(0, planetOwner[p])).put(docked);
+			for (int id = nextShip(0); id >= 0; id = nextShip(id + 1)) if (isDockedAt(id, p)) out.put(id);
+		}
+		return out;
+	}
+
+	/**
+	 * @return the estimated bytes this snapshot copied or created for itself since it was created or
+	 * last forked, i.e. what retaining it costs on top of the snapshots it shares state with
+	 */
+	public long getOwnedBytes() {
+		return SNAPSHOT_BYTES + ownedBytes;
+	}
+
+	/**
+	 * Counts every node reachable from the snapshots once, however many of them share it.
+	 *
+	 * @return snapshot count, total estimated bytes and bytes per snapshot, compared to full copies
+	 */
+	public static String memoryReport(Collection<GameSnapshot> snapshots) {
+		Map<Object, Boolean> seen = new IdentityHashMap<>();
+		long total = 0;
+		long unshared = 0;
+		for (GameSnapshot snapshot : snapshots) {
+			long bytes = SNAPSHOT_BYTES;
+			total += SNAPSHOT_BYTES;
+			bytes += arrayBytes(snapshot.root.length, 4);
+			if (seen.put(snapshot.root, Boolean.TRUE) == null) total += arrayBytes(snapshot.root.length, 4);
+			for (Inner inner : snapshot.root) {
+				if (inner == null) continue;
+				bytes += INNER_BYTES;
+				if (seen.put(inner, Boolean.TRUE) == null) total += INNER_BYTES;
+				for (Leaf leaf : inner.leaves) {
+					if (leaf == null) continue;
+					bytes += LEAF_BYTES;
+					if (seen.put(leaf, Boolean.TRUE) == null) total += LEAF_BYTES;
+				}
+			}
+			for (int[] planetState : new int[][] {snapshot.planetOwner, snapshot.planetHealth, snapshot.production}) {
+				bytes += arrayBytes(planetState.length, 4);
+				if (seen.put(planetState, Boolean.TRUE) == null) total += arrayBytes(planetState.length, 4);
+			}
+			unshared += bytes;
+		}
+		int count = snapshots.size();
+		return String.format(Locale.ROOT, "%d snapshots: %.1f KB, %.0f bytes per snapshot, %.1f KB as full copies",
+				count, total / 1024.0, count == 0 ? 0.0 : (double) total / count, unshared / 1024.0);
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.ROOT, "GameSnapshot[turn %d, %d ships, %d planets, %d bytes owned]",
+				turn, shipCount, shared.id.length, getOwnedBytes());
+	}
+
+	private boolean isDockedAt(int ship, int planet) {
+		Leaf leaf = leaf(ship);
+		return leaf.status[ship & MASK] != 0 && leaf.dockedPlanet[ship & MASK] == shared.id[planet];
+	}
+
+	private Leaf leaf(int id) {
+		if (id < 0 || id >>> 2 * BITS >= root.length) return null;
+		Inner inner = root[id >>> 2 * BITS];
+		return inner == null ? null : inner.leaves[(id >>> BITS) & MASK];
+	}
+
+	private Leaf existing(int id) {
+		Leaf leaf = leaf(id);
+		if (leaf == null || leaf.health[id & MASK] <= 0) throw new IllegalArgumentException("No ship " + id);
+		return leaf;
+	}
+
+	// copies the path to the ship's leaf unless this snapshot already owns it
+	private Leaf writableLeaf(int id) {
+		int r = id >>> 2 * BITS;
+		if (!rootOwned || r >= root.length) {
+			// the ship counts go along with the root, so they are owned whenever a leaf is
+			if (!rootOwned) {
+				shipsByPlayer = shipsByPlayer.clone();
+				ownedBytes += arrayBytes(players, 4);
+			}
+			root = Arrays.copyOf(root, Math.max(root.length, r + 1));
+			rootOwned = true;
+			ownedBytes += arrayBytes(root.length, 4);
+		}
+		Inner inner = root[r];
+		if (inner == null || inner.editor != editor) {
+			inner = new Inner(editor, inner == null ? new Leaf[WIDTH] : inner.leaves.clone());
+			root[r] = inner;
+			ownedBytes += INNER_BYTES;
+		}
+		int l = (id >>> BITS) & MASK;
+		Leaf leaf = inner.leaves[l];
+		if (leaf == null || leaf.editor != editor) {
+			leaf = leaf == null ? new Leaf(editor) : new Leaf(editor, leaf);
+			inner.leaves[l] = leaf;
+			ownedBytes += LEAF_BYTES;
+		}
+		return leaf;
+	}
+
+	private void ownPlanets() {
+		if (planetsOwned) return;
+		planetOwner = planetOwner.clone();
+		planetHealth = planetHealth.clone();
+		production = production.clone();
+		planetsOwned = true;
+		ownedBytes += 3 * arrayBytes(planetOwner.length, 4);
+	}
+
+	private static long arrayBytes(int length, int elementBytes) {
+		return ARRAY_HEADER_BYTES + (long) length * elementBytes;
+	}
+}
@@ -0,0 +1,101 @@
+package sim;
+
+import hlt.FrameParser;
+import hlt.GameMap;
+import hlt.Move;
+import strategy.AbstractStrategy;
+import strategy.StrategyFactory;
+import strategy.StrategyParameters;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * One game of the bot against itself on the {@link Simulator}, every seat with its own parameters.
+ * <p>
+ * Each turn, every player still in the game updates its own {@link GameMap} from the simulator's
+ * frame and plays its strategy, chosen through {@link StrategyFactory} as in a real game, from the
+ * match's own random source. A strategy that throws loses its moves for that turn, like a bot that
+ * timed out.
+ */
+public class Match {
+	private final int width;
+	private final int height;
+	private final byte[] startFrame;
+	private final StrategyParameters[] seats;
+	private final long seed;
+
+	private int winner = -1;
+	private int turns;
+	private int errors;
+	private int[] ships;
+
+	/**
+	 * @param startFrame the first frame, with as many players as there are seats
+	 * @param seed       seeds the strategy choice of every seat
+	 */
+	public Match(int width, int height, byte[] startFrame, StrategyParameters[] seats, long seed) {
+		this.width = width;
+		this.height = height;
+		this.startFrame = startFrame;
+		this.seats = seats;
+		this.seed = seed;
+	}
+
+	public Match play() {
+		Simulator simulator = Simulator.fromFrame(width, height, startFrame, startFrame.length);
+		if (simulator.getPlayers() != seats.length) throw new IllegalArgumentException(seats.length + " seats for " + simulator.getPlayers() + " players");
+		FrameWriter frame = new FrameWriter();
+		FrameParser parser = new FrameParser();
+		Random random = new Random(seed);
+		GameMap[] maps = new GameMap[seats.length];
+		AbstractStrategy[] strategies = new AbstractStrategy[seats.length];
+		for (int player = 0; player < seats.length; player++) maps[player] = new GameMap(width, height, player);
+
+		while (!simulator.isOver()) {
+			simulator.writeFrame(frame);
+			for (int player = 0; player < seats.length; player++) {
+				if (simulator.getShipCount(player) == 0) continue;
+				maps[player].updateMap(parser.reset(frame.getBytes(), frame.getLength()));
+				if (simulator.getTurn() == 0) maps[player].buildRoadmap();
+				List<Move> moves;
+				try {
+					strategies[player] = StrategyFactory.chooseStrategy(maps[player], Collections.emptyList(), strategies[player], seats[player], random);
+					moves = strategies[player].apply();
+				} catch (RuntimeException e) {
+					errors++;
+					moves = Collections.emptyList();
+				}
+				simulator.applyMoves(player, moves);
+			}
+			simulator.step();
+		}
+
+		winner = simulator.getLeader();
+		turns = simulator.getTurn();
+		ships = new int[seats.length];
+		for (int player = 0; player < seats.length; player++) ships[player] = simulator.getShipCount(player);
+		return this;
+	}
+
+	/**
+	 * @return the seat with the most ships at the end, or -1 if all were destroyed
+	 */
+	public int getWinner() {
+		return winner;
+	}
+
+	public int getTurns() {
+		return turns;
+	}
+
+	/** Turns in which a strategy threw. */
+	public int getErrors() {
+		return errors;
+	}
+
+	public int[] getShips() {
+		return ships;
+	}
+}
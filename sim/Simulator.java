@@ -0,0 +1,741 @@
+package sim;
+
+import hlt.Constants;
+import hlt.DockMove;
+import hlt.FrameParser;
+import hlt.Move;
+import hlt.ThrustMove;
+
+import java.util.Arrays;
+
+/**
+ * Forward model of a Halite II game, stepping a whole turn in-process.
+ * <p>
+ * The state lives in primitive arrays, ships in dense slots in frame order and planets in frame
+ * order, found by id through a lookup table, as destroyed planets leave gaps in the ids. Every
+ * buffer grows only when the fleet outgrows it, so a turn allocates nothing once the game has
+ * reached its size. A turn follows the engine:
+ * <ol>
+ * <li>dock and undock commands take effect; a planet several players try to take in the same turn
+ * stays free,</li>
+ * <li>ships move along their thrust, and collisions are resolved in the order they happen within
+ * the turn: colliding ships both die, a ship hitting a planet dies and damages it by its health, a
+ * ship leaving the map dies,</li>
+ * <li>every undocked ship fires at all enemy ships within {@link Constants#WEAPON_RADIUS}, splitting
+ * {@link Constants#WEAPON_DAMAGE} between them,</li>
+ * <li>destroyed planets explode, killing their docked ships and damaging ships within
+ * {@link Constants#EXPLOSION_RADIUS} of their surface,</li>
+ * <li>docking and undocking progress by a turn out of {@link Constants#DOCK_TURNS},</li>
+ * <li>owned planets produce {@link Constants#BASE_PRODUCTIVITY} per docked ship and spawn a ship
+ * for every {@link #SHIP_COST} at {@link Constants#SPAWN_RADIUS} from their surface, towards the
+ * map center.</li>
+ * </ol>
+ * Unlike the engine, weapons fire at the positions ships end the turn at, and remaining production
+ * is only reported, not used up. Frames for the bots come from {@link #writeFrame(FrameWriter)}, and
+ * {@link #fromSnapshot(GameSnapshot)} steps a branch of a lookahead without a frame in between.
+ */
+public class Simulator {
+	public static final int UNDOCKED = 0;
+	public static final int DOCKING = 1;
+	public static final int DOCKED = 2;
+	public static final int UNDOCKING = 3;
+
+	/** Production needed for a new ship. */
+	public static final int SHIP_COST = 72;
+
+	private static final int NONE = 0;
+	private static final int THRUST = 1;
+	private static final int DOCK = 2;
+	private static final int UNDOCK = 3;
+
+	private static final double WEAPON_REACH = Constants.WEAPON_RADIUS + 2 * Constants.SHIP_RADIUS;
+	// collision events are sorted by their time quantized to this many steps, with the event index below
+	private static final long TIME_STEPS = 1 << 20;
+	private static final int EVENT_BITS = 32;
+	private static final int WALL = Integer.MIN_VALUE;
+
+	private final int width;
+	private final int height;
+	private final int players;
+	private int turn;
+	private int nextShipId;
+
+	// ships
+	private int shipCount;
+	private int[] shipId = new int[0];
+	private int[] owner = new int[0];
+	private double[] x = new double[0];
+	private double[] y = new double[0];
+	private double[] vx = new double[0];
+	private double[] vy = new double[0];
+	private int[] health = new int[0];
+	private int[] status = new int[0];
+	private int[] dockedPlanet = new int[0];
+	private int[] progress = new int[0];
+	private int[] command = new int[0];
+	private int[] commandPlanet = new int[0];
+	private double[] damage = new double[0];
+	private int[] targets = new int[16];
+	private int[] slotById = new int[0];
+
+	// planets, allocated once the loader knows how many there are
+	private int planetCount;
+	private int[] planetId;
+	private double[] planetX;
+	private double[] planetY;
+	private double[] planetRadius;
+	private int[] planetHealth;
+	private int[] spots;
+	private int[] production;
+	private int[] remaining;
+	private int[] planetOwner;
+	private int[][] docked;
+	private int[] dockedCount;
+	private int[] dockClaim;
+	private int[] planetIndexById;
+
+	// spatial hash over ship slots, rebuilt for movement and weapons with cells as large as the reach
+	private double cellSize;
+	private int columns;
+	private int rows;
+	private final int[] cellHead;
+	private int[] cellNext = new int[0];
+
+	private int eventCount;
+	private long[] eventKeys = new long[0];
+	private int[] eventA = new int[0];
+	private int[] eventB = new int[0];
+
+	private final int[] shipsByPlayer;
+	private final long[] healthByPlayer;
+
+	/**
+	 * Loads the state from a frame in the engine's format.
+	 */
+	public Simulator(int width, int height, FrameParser frame) {
+		this(width, height, frame.nextInt());
+		for (int p = 0; p < players; p++) {
+			int player = frame.nextInt();
+			int ships = frame.nextInt();
+			for (int s = 0; s < ships; s++) {
+				int slot = addShip(frame.nextInt(), player, frame.nextDouble(), frame.nextDouble());
+				health[slot] = frame.nextInt();
+				frame.nextDouble();
+				frame.nextDouble();
+				status[slot] = frame.nextInt();
+				dockedPlanet[slot] = frame.nextInt();
+				progress[slot] = frame.nextInt();
+				frame.nextInt();
+			}
+		}
+
+		allocatePlanets(frame.nextInt());
+		for (int p = 0; p < planetCount; p++) {
+			planetId[p] = frame.nextInt();
+			planetX[p] = frame.nextDouble();
+			planetY[p] = frame.nextDouble();
+			planetHealth[p] = frame.nextInt();
+			planetRadius[p] = frame.nextDouble();
+			spots[p] = frame.nextInt();
+			production[p] = frame.nextInt();
+			remaining[p] = frame.nextInt();
+			boolean owned = frame.nextInt() == 1;
+			planetOwner[p] = frame.nextInt();
+			if (!owned) planetOwner[p] = -1;
+			docked[p] = new int[spots[p]];
+			dockedCount[p] = frame.nextInt();
+			for (int d = 0; d < dockedCount[p]; d++) docked[p][d] = frame.nextInt();
+		}
+		indexPlanets();
+		countPlayers();
+	}
+
+	private Simulator(int width, int height, int players) {
+		this.width = width;
+		this.height = height;
+		this.players = players;
+		shipsByPlayer = new int[players];
+		healthByPlayer = new long[players];
+		cellHead = new int[((int) (width / WEAPON_REACH) + 1) * ((int) (height / WEAPON_REACH) + 1)];
+	}
+
+	public static Simulator fromFrame(int width, int height, byte[] frame, int length) {
+		return new Simulator(width, height, new FrameParser().reset(frame, length));
+	}
+
+	/**
+	 * Loads the state of a snapshot directly, without going through a frame. Ships take slots in id
+	 * order rather than frame order, and the snapshot's turn carries over.
+	 */
+	public static Simulator fromSnapshot(GameSnapshot snapshot) {
+		Simulator simulator = new Simulator(snapshot.getWidth(), snapshot.getHeight(), snapshot.getPlayers());
+		simulator.turn = snapshot.getTurn();
+		for (int id = snapshot.nextShip(0); id >= 0; id = snapshot.nextShip(id + 1)) {
+			int slot = simulator.addShip(id, snapshot.getOwner(id), snapshot.getX(id), snapshot.getY(id));
+			simulator.health[slot] = snapshot.getHealth(id);
+			simulator.status[slot] = snapshot.getDockingStatus(id);
+			simulator.dockedPlanet[slot] = snapshot.getDockedPlanet(id);
+			simulator.progress[slot] = snapshot.getDockingProgress(id);
+		}
+
+		int alive = 0;
+		for (int index = 0; index < snapshot.getPlanetCount(); index++) if (snapshot.getPlanetHealth(index) > 0) alive++;
+		simulator.allocatePlanets(alive);
+		int p = 0;
+		for (int index = 0; index < snapshot.getPlanetCount(); index++) {
+			if (snapshot.getPlanetHealth(index) <= 0) continue;
+			simulator.planetId[p] = snapshot.getPlanetId(index);
+			simulator.planetX[p] = snapshot.getPlanetX(index);
+			simulator.planetY[p] = snapshot.getPlanetY(index);
+			simulator.planetHealth[p] = snapshot.getPlanetHealth(index);
+			simulator.planetRadius[p] = snapshot.getPlanetRadius(index);
+			simulator.spots[p] = snapshot.getDockingSpots(index);
+			simulator.production[p] = snapshot.getProduction(index);
+			simulator.remaining[p] = snapshot.getRemainingProduction(index);
+			simulator.planetOwner[p] = snapshot.getPlanetOwner(index);
+			simulator.docked[p] = new int[simulator.spots[p]];
+			p++;
+		}
+		simulator.indexPlanets();
+		for (int s = 0; s < simulator.shipCount; s++) {
+			int planet = simulator.dockedPlanet[s];
+			if (planet >= 0 && simulator.dockedCount[planet] < simulator.spots[planet]) {
+				simulator.docked[planet][simulator.dockedCount[planet]++] = simulator.shipId[s];
+			}
+		}
+		simulator.countPlayers();
+		return simulator;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getPlayers() {
+		return players;
+	}
+
+	public int getTurn() {
+		return turn;
+	}
+
+	public int getShipCount() {
+		return shipCount;
+	}
+
+	public int getShipCount(int player) {
+		return shipsByPlayer[player];
+	}
+
+	public long getTotalHealth(int player) {
+		return healthByPlayer[player];
+	}
+
+	public int getPlanetCount() {
+		return planetCount;
+	}
+
+	/**
+	 * @return the owner of the planet with the given id, or -1 if it is free or not in the game
+	 */
+	public int getPlanetOwner(int planet) {
+		int p = planetIndex(planet);
+		return p < 0 ? -1 : planetOwner[p];
+	}
+
+	/** The engine's turn limit for the map size. */
+	public int getMaxTurns() {
+		return 100 + (int) Math.sqrt(width * height);
+	}
+
+	/**
+	 * @return whether the turn limit is reached or at most one player has ships left
+	 */
+	public boolean isOver() {
+		if (turn >= getMaxTurns()) return true;
+		int alive = 0;
+		for (int p = 0; p < players; p++) if (shipsByPlayer[p] > 0) alive++;
+		return alive <= 1;
+	}
+
+	/**
+	 * @return the player with the most ships, ties going to the one with more total health; -1 if nobody has ships
+	 */
+	public int getLeader() {
+		int leader = -1;
+		for (int p = 0; p < players; p++) {
+			if (shipsByPlayer[p] == 0) continue;
+			if (leader < 0 || shipsByPlayer[p] > shipsByPlayer[leader]
+					|| shipsByPlayer[p] == shipsByPlayer[leader] && healthByPlayer[p] > healthByPlayer[leader]) leader = p;
+		}
+		return leader;
+	}
+
+	public void thrust(int ship, int thrust, int angleDeg) {
+		int slot = slotOf(ship);
+		if (slot < 0 || status[slot] != UNDOCKED) return;
+		double angle = Math.toRadians(angleDeg);
+		int speed = Math.max(0, Math.min(Constants.MAX_SPEED, thrust));
+		command[slot] = THRUST;
+		vx[slot] = speed * Math.cos(angle);
+		vy[slot] = speed * Math.sin(angle);
+	}
+
+	public void dock(int ship, int planet) {
+		int slot = slotOf(ship);
+		int p = planetIndex(planet);
+		if (slot < 0 || p < 0) return;
+		command[slot] = DOCK;
+		commandPlanet[slot] = p;
+	}
+
+	public void undock(int ship) {
+		int slot = slotOf(ship);
+		if (slot >= 0) command[slot] = UNDOCK;
+	}
+
+	/**
+	 * Takes a player's moves for the next step; moves of ships the player does not own are ignored.
+	 */
+	public void applyMoves(int player, Iterable<Move> moves) {
+		for (Move move : moves) {
+			int ship = move.getShip().getId();
+			int slot = slotOf(ship);
+			if (slot < 0 || owner[slot] != player) continue;
+			switch (move.getType()) {
+				case Thrust: thrust(ship, ((ThrustMove) move).getThrust(), ((ThrustMove) move).getAngle()); break;
+				case Dock: dock(ship, (int) ((DockMove) move).getDestinationId()); break;
+				case Undock: undock(ship); break;
+				default: break;
+			}
+		}
+	}
+
+	/**
+	 * Plays one turn with the moves given since the last step.
+	 */
+	public void step() {
+		processDocking();
+		move();
+		fire();
+		removeDead();
+		progressDocking();
+		produce();
+		for (int s = 0; s < shipCount; s++) {
+			command[s] = NONE;
+			vx[s] = 0;
+			vy[s] = 0;
+		}
+		turn++;
+		countPlayers();
+	}
+
+	/**
+	 * Writes the current state as an engine frame, without line terminator.
+	 */
+	public FrameWriter writeFrame(FrameWriter out) {
+		out.clear().put(players);
+		for (int p = 0; p < players; p++) {
+			out.put(p).put(shipsByPlayer[p]);
+			for (int s = 0; s < shipCount; s++) {
+				if (owner[s] != p) continue;
+				out.put(shipId[s]).put(x[s]).put(y[s]).put(health[s]).put(0.0).put(0.0)
+						.put(status[s]).put(status[s] == UNDOCKED || dockedPlanet[s] < 0 ? 0 : planetId[dockedPlanet[s]]).put(progress[s]).put(0);
+			}
+		}
+		int alive = 0;
+		for (int p = 0; p < planetCount; p++) if (planetHealth[p] > 0) alive++;
+		out.put(alive);
+		for (int p = 0; p < planetCount; p++) {
+			if (planetHealth[p] <= 0) continue;
+			out.put(planetId[p]).put(planetX[p]).put(planetY[p]).put(planetHealth[p]).put(planetRadius[p])
+					.put(spots[p]).put(production[p]).put(remaining[p])
+					.put(planetOwner[p] >= 0 ? 1 : 0).put(Math.max(0, planetOwner[p])).put(dockedCount[p]);
+			for (int d = 0; d < dockedCount[p]; d++) out.put(docked[p][d]);
+		}
+		return out;
+	}
+
+	private void processDocking() {
+		Arrays.fill(dockClaim, -1);
+		for (int s = 0; s < shipCount; s++) {
+			if (command[s] != DOCK || status[s] != UNDOCKED) continue;
+			int p = commandPlanet[s];
+			if (!canDock(s, p)) continue;
+			// a second player claiming the same free planet blocks it for both
+			if (dockClaim[p] == -1) dockClaim[p] = owner[s];
+			else if (dockClaim[p] != owner[s]) dockClaim[p] = -2;
+		}
+		for (int s = 0; s < shipCount; s++) {
+			if (command[s] == UNDOCK && status[s] == DOCKED) {
+				status[s] = UNDOCKING;
+				progress[s] = Constants.DOCK_TURNS;
+			}
+			if (command[s] != DOCK || status[s] != UNDOCKED) continue;
+			int p = commandPlanet[s];
+			if (dockClaim[p] < 0 || !canDock(s, p)) continue;
+			status[s] = DOCKING;
+			dockedPlanet[s] = p;
+			progress[s] = Constants.DOCK_TURNS;
+			docked[p][dockedCount[p]++] = shipId[s];
+			planetOwner[p] = owner[s];
+		}
+	}
+
+	private boolean canDock(int s, int p) {
+		if (planetHealth[p] <= 0 || planetOwner[p] >= 0 && planetOwner[p] != owner[s] || dockedCount[p] >= spots[p]) return false;
+		double reach = planetRadius[p] + Constants.DOCK_RADIUS + Constants.SHIP_RADIUS;
+		return square(x[s] - planetX[p]) + square(y[s] - planetY[p]) <= reach * reach;
+	}
+
+	private void move() {
+		double maxSpeed = 0;
+		for (int s = 0; s < shipCount; s++) maxSpeed = Math.max(maxSpeed, vx[s] * vx[s] + vy[s] * vy[s]);
+		double shipReach = 2 * Constants.SHIP_RADIUS;
+		buildGrid(Math.max(WEAPON_REACH, 2 * Math.sqrt(maxSpeed) + shipReach));
+		eventCount = 0;
+		for (int a = 0; a < shipCount; a++) {
+			if (vx[a] == 0 && vy[a] == 0) continue;
+			// pairs are found from the moving ship, or from the lower slot when both move
+			int column = column(x[a]);
+			int row = row(y[a]);
+			for (int c = Math.max(0, column - 1); c <= Math.min(columns - 1, column + 1); c++) {
+				for (int r = Math.max(0, row - 1); r <= Math.min(rows - 1, row + 1); r++) {
+					for (int b = cellHead[r * columns + c]; b >= 0; b = cellNext[b]) {
+						if (b == a || b < a && (vx[b] != 0 || vy[b] != 0)) continue;
+						double t = contactTime(x[b] - x[a], y[b] - y[a], vx[b] - vx[a], vy[b] - vy[a], shipReach);
+						if (t >= 0) addEvent(t, a, b);
+					}
+				}
+			}
+			for (int p = 0; p < planetCount; p++) {
+				if (planetHealth[p] <= 0) continue;
+				double t = contactTime(planetX[p] - x[a], planetY[p] - y[a], -vx[a], -vy[a], planetRadius[p] + Constants.SHIP_RADIUS);
+				if (t >= 0) addEvent(t, a, -1 - p);
+			}
+			double t = exitTime(a);
+			if (t >= 0) addEvent(t, a, WALL);
+		}
+
+		Arrays.sort(eventKeys, 0, eventCount);
+		for (int e = 0; e < eventCount; e++) {
+			int event = (int) (eventKeys[e] & 0xFFFFFFFFL);
+			int a = eventA[event];
+			int b = eventB[event];
+			if (health[a] <= 0) continue;
+			if (b == WALL) {
+				health[a] = 0;
+			} else if (b < 0) {
+				int p = -1 - b;
+				if (planetHealth[p] <= 0) continue;
+				planetHealth[p] -= health[a];
+				health[a] = 0;
+			} else if (health[b] > 0) {
+				health[a] = 0;
+				health[b] = 0;
+			}
+		}
+
+		for (int s = 0; s < shipCount; s++) {
+			x[s] += vx[s];
+			y[s] += vy[s];
+		}
+	}
+
+	private void fire() {
+		buildGrid(WEAPON_REACH);
+		for (int s = 0; s < shipCount; s++) damage[s] = 0;
+		for (int a = 0; a < shipCount; a++) {
+			if (health[a] <= 0 || status[a] != UNDOCKED) continue;
+			int targets = 0;
+			int column = column(x[a]);
+			int row = row(y[a]);
+			for (int c = Math.max(0, column - 1); c <= Math.min(columns - 1, column + 1); c++) {
+				for (int r = Math.max(0, row - 1); r <= Math.min(rows - 1, row + 1); r++) {
+					for (int b = cellHead[r * columns + c]; b >= 0; b = cellNext[b]) {
+						if (owner[b] == owner[a] || health[b] <= 0) continue;
+						if (square(x[b] - x[a]) + square(y[b] - y[a]) > WEAPON_REACH * WEAPON_REACH) continue;
+						if (targets == this.targets.length) this.targets = Arrays.copyOf(this.targets, targets * 2);
+						this.targets[targets++] = b;
+					}
+				}
+			}
+			for (int t = 0; t < targets; t++) damage[this.targets[t]] += (double) Constants.WEAPON_DAMAGE / targets;
+		}
+		for (int s = 0; s < shipCount; s++) health[s] -= (int) damage[s];
+	}
+
+	private void removeDead() {
+		for (int p = 0; p < planetCount; p++) {
+			if (planetHealth[p] > 0 || dockedCount[p] < 0) continue;
+			// destroyed this turn: take down the docked ships and everything near the blast
+			for (int d = 0; d < dockedCount[p]; d++) {
+				int slot = slotOf(docked[p][d]);
+				if (slot >= 0) health[slot] = 0;
+			}
+			dockedCount[p] = -1;
+			planetOwner[p] = -1;
+			double blast = planetRadius[p] + Constants.EXPLOSION_RADIUS;
+			for (int s = 0; s < shipCount; s++) {
+				double distance = Math.sqrt(square(x[s] - planetX[p]) + square(y[s] - planetY[p]));
+				if (distance > blast) continue;
+				double falloff = Math.max(0, distance - planetRadius[p]) / Constants.EXPLOSION_RADIUS;
+				health[s] -= (int) Math.round(Constants.MAX_SHIP_HEALTH * (1 - falloff));
+			}
+		}
+
+		int kept = 0;
+		for (int s = 0; s < shipCount; s++) {
+			if (health[s] <= 0) {
+				if (status[s] != UNDOCKED) leavePlanet(s);
+				slotById[shipId[s]] = -1;
+				continue;
+			}
+			if (kept != s) moveSlot(s, kept);
+			kept++;
+		}
+		shipCount = kept;
+	}
+
+	private void progressDocking() {
+		for (int s = 0; s < shipCount; s++) {
+			if (status[s] == DOCKING && --progress[s] <= 0) {
+				status[s] = DOCKED;
+				progress[s] = 0;
+			} else if (status[s] == UNDOCKING && --progress[s] <= 0) {
+				leavePlanet(s);
+				status[s] = UNDOCKED;
+				progress[s] = 0;
+			}
+		}
+	}
+
+	private void produce() {
+		buildGrid(WEAPON_REACH);
+		for (int p = 0; p < planetCount; p++) {
+			if (planetOwner[p] < 0 || dockedCount[p] <= 0) continue;
+			int active = 0;
+			for (int d = 0; d < dockedCount[p]; d++) {
+				int slot = slotOf(docked[p][d]);
+				if (slot >= 0 && status[slot] == DOCKED) active++;
+			}
+			production[p] += Constants.BASE_PRODUCTIVITY * active;
+			while (production[p] >= SHIP_COST && spawn(p)) production[p] -= SHIP_COST;
+		}
+	}
+
+	// Places a new ship at the planet's spawn distance, starting from the side facing the map center.
+	private boolean spawn(int p) {
+		double distance = planetRadius[p] + Constants.SPAWN_RADIUS;
+		double toCenter = Math.atan2(height / 2.0 - planetY[p], width / 2.0 - planetX[p]);
+		for (int attempt = 0; attempt < 36; attempt++) {
+			double angle = toCenter + Math.toRadians(10 * ((attempt + 1) / 2) * (attempt % 2 == 0 ? 1 : -1));
+			double spawnX = planetX[p] + distance * Math.cos(angle);
+			double spawnY = planetY[p] + distance * Math.sin(angle);
+			if (spawnX < Constants.SHIP_RADIUS || spawnY < Constants.SHIP_RADIUS
+					|| spawnX > width - Constants.SHIP_RADIUS || spawnY > height - Constants.SHIP_RADIUS || isOccupied(spawnX, spawnY)) continue;
+			int slot = addShip(nextShipId, planetOwner[p], spawnX, spawnY);
+			health[slot] = Constants.BASE_SHIP_HEALTH;
+			int cell = row(spawnY) * columns + column(spawnX);
+			cellNext[slot] = cellHead[cell];
+			cellHead[cell] = slot;
+			return true;
+		}
+		return false;
+	}
+
+	private boolean isOccupied(double px, double py) {
+		double reach = 2 * Constants.SHIP_RADIUS;
+		int column = column(px);
+		int row = row(py);
+		for (int c = Math.max(0, column - 1); c <= Math.min(columns - 1, column + 1); c++) {
+			for (int r = Math.max(0, row - 1); r <= Math.min(rows - 1, row + 1); r++) {
+				for (int s = cellHead[r * columns + c]; s >= 0; s = cellNext[s]) {
+					if (square(x[s] - px) + square(y[s] - py) < reach * reach) return true;
+				}
+			}
+		}
+		for (int p = 0; p < planetCount; p++) {
+			double planetReach = planetRadius[p] + Constants.SHIP_RADIUS;
+			if (planetHealth[p] > 0 && square(planetX[p] - px) + square(planetY[p] - py) < planetReach * planetReach) return true;
+		}
+		return false;
+	}
+
+	private void allocatePlanets(int count) {
+		planetCount = count;
+		planetId = new int[count];
+		planetX = new double[count];
+		planetY = new double[count];
+		planetRadius = new double[count];
+		planetHealth = new int[count];
+		spots = new int[count];
+		production = new int[count];
+		remaining = new int[count];
+		planetOwner = new int[count];
+		docked = new int[count][];
+		dockedCount = new int[count];
+		dockClaim = new int[count];
+	}
+
+	// Builds the id lookup and points the ships at planet indices instead of ids.
+	private void indexPlanets() {
+		int maxId = -1;
+		for (int p = 0; p < planetCount; p++) maxId = Math.max(maxId, planetId[p]);
+		planetIndexById = new int[maxId + 1];
+		Arrays.fill(planetIndexById, -1);
+		for (int p = 0; p < planetCount; p++) planetIndexById[planetId[p]] = p;
+		for (int s = 0; s < shipCount; s++) dockedPlanet[s] = status[s] == UNDOCKED ? -1 : planetIndex(dockedPlanet[s]);
+	}
+
+	private int planetIndex(int id) {
+		return id >= 0 && id < planetIndexById.length ? planetIndexById[id] : -1;
+	}
+
+	private void leavePlanet(int s) {
+		int p = dockedPlanet[s];
+		if (p < 0 || p >= planetCount || dockedCount[p] <= 0) return;
+		for (int d = 0; d < dockedCount[p]; d++) {
+			if (docked[p][d] != shipId[s]) continue;
+			System.arraycopy(docked[p], d + 1, docked[p], d, dockedCount[p] - d - 1);
+			if (--dockedCount[p] == 0) planetOwner[p] = -1;
+			return;
+		}
+	}
+
+	private void countPlayers() {
+		Arrays.fill(shipsByPlayer, 0);
+		Arrays.fill(healthByPlayer, 0);
+		for (int s = 0; s < shipCount; s++) {
+			shipsByPlayer[owner[s]]++;
+			healthByPlayer[owner[s]] += health[s];
+		}
+	}
+
+	private int addShip(int id, int player, double shipX, double shipY) {
+		if (shipCount == shipId.length) grow(Math.max(64, shipCount * 2));
+		if (id >= slotById.length) {
+			int length = slotById.length;
+			slotById = Arrays.copyOf(slotById, Math.max(id + 1, length * 2));
+			Arrays.fill(slotById, length, slotById.length, -1);
+		}
+		int slot = shipCount++;
+		shipId[slot] = id;
+		owner[slot] = player;
+		x[slot] = shipX;
+		y[slot] = shipY;
+		vx[slot] = 0;
+		vy[slot] = 0;
+		status[slot] = UNDOCKED;
+		dockedPlanet[slot] = -1;
+		progress[slot] = 0;
+		command[slot] = NONE;
+		slotById[id] = slot;
+		nextShipId = Math.max(nextShipId, id + 1);
+		return slot;
+	}
+
+	private void moveSlot(int from, int to) {
+		shipId[to] = shipId[from];
+		owner[to] = owner[from];
+		x[to] = x[from];
+		y[to] = y[from];
+		vx[to] = vx[from];
+		vy[to] = vy[from];
+		health[to] = health[from];
+		status[to] = status[from];
+		dockedPlanet[to] = dockedPlanet[from];
+		progress[to] = progress[from];
+		command[to] = command[from];
+		commandPlanet[to] = commandPlanet[from];
+		slotById[shipId[to]] = to;
+	}
+
+	private void grow(int capacity) {
+		shipId = Arrays.copyOf(shipId, capacity);
+		owner = Arrays.copyOf(owner, capacity);
+		x = Arrays.copyOf(x, capacity);
+		y = Arrays.copyOf(y, capacity);
+		vx = Arrays.copyOf(vx, capacity);
+		vy = Arrays.copyOf(vy, capacity);
+		health = Arrays.copyOf(health, capacity);
+		status = Arrays.copyOf(status, capacity);
+		dockedPlanet = Arrays.copyOf(dockedPlanet, capacity);
+		progress = Arrays.copyOf(progress, capacity);
+		command = Arrays.copyOf(command, capacity);
+		commandPlanet = Arrays.copyOf(commandPlanet, capacity);
+		damage = Arrays.copyOf(damage, capacity);
+		cellNext = Arrays.copyOf(cellNext, capacity);
+	}
+
+	private int slotOf(int id) {
+		return id >= 0 && id < slotById.length ? slotById[id] : -1;
+	}
+
+	private void buildGrid(double size) {
+		cellSize = size;
+		columns = (int) (width / size) + 1;
+		rows = (int) (height / size) + 1;
+		Arrays.fill(cellHead, 0, columns * rows, -1);
+		for (int s = shipCount - 1; s >= 0; s--) {
+			int cell = row(y[s]) * columns + column(x[s]);
+			cellNext[s] = cellHead[cell];
+			cellHead[cell] = s;
+		}
+	}
+
+	private int column(double value) {
+		return Math.max(0, Math.min(columns - 1, (int) (value / cellSize)));
+	}
+
+	private int row(double value) {
+		return Math.max(0, Math.min(rows - 1, (int) (value / cellSize)));
+	}
+
+	private void addEvent(double t, int a, int b) {
+		if (eventCount == eventKeys.length) {
+			int capacity = Math.max(64, eventCount * 2);
+			eventKeys = Arrays.copyOf(eventKeys, capacity);
+			eventA = Arrays.copyOf(eventA, capacity);
+			eventB = Arrays.copyOf(eventB, capacity);
+		}
+		eventKeys[eventCount] = (long) (t * TIME_STEPS) << EVENT_BITS | eventCount;
+		eventA[eventCount] = a;
+		eventB[eventCount] = b;
+		eventCount++;
+	}
+
+	/**
+	 * @return the first time in [0, 1] at which a circle at offset (dx, dy) moving by (dvx, dvy)
+	 * relative to the origin comes within the given distance of it, or -1 if it does not
+	 */
+	private static double contactTime(double dx, double dy, double dvx, double dvy, double distance) {
+		double c = dx * dx + dy * dy - distance * distance;
+		if (c <= 0) return 0;
+		double a = dvx * dvx + dvy * dvy;
+		if (a == 0) return -1;
+		double b = 2 * (dx * dvx + dy * dvy);
+		double discriminant = b * b - 4 * a * c;
+		if (discriminant < 0 || b >= 0) return -1;
+		double t = (-b - Math.sqrt(discriminant)) / (2 * a);
+		return t <= 1 ? t : -1;
+	}
+
+	// first time the ship's center leaves the map, or -1
+	private double exitTime(int s) {
+		double t = 2;
+		if (x[s] + vx[s] < 0) t = Math.min(t, -x[s] / vx[s]);
+		if (x[s] + vx[s] > width) t = Math.min(t, (width - x[s]) / vx[s]);
+		if (y[s] + vy[s] < 0) t = Math.min(t, -y[s] / vy[s]);
+		if (y[s] + vy[s] > height) t = Math.min(t, (height - y[s]) / vy[s]);
+		return t <= 1 ? Math.max(0, t) : -1;
+	}
+
+	private static double square(double value) {
+		return value * value;
+	}
+}
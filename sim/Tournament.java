@@ -0,0 +1,319 @@
+package sim;
+
+import hlt.Log;
+import strategy.StrategyParameters;
+import utils.GameStateGenerator;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Plays configurations of the bot against each other on the {@link Simulator}, in parallel on all
+ * cores.
+ * <p>
+ * The configurations are the defaults plus a sweep over {@link StrategyParameters}: either the grid
+ * of all listed values, or a number of random draws from value lists and {@code lo:hi} ranges. Games
+ * are played in rounds, each configuration taking a seat in {@code --round-games} games per round,
+ * on maps generated by {@link GameStateGenerator} from seeds derived from {@code --seed}, which also
+ * seeds the strategy choice of every game. A seat wins a game when it has the most ships at the end.
+ * <p>
+ * Once every configuration has played {@code --min-games}, configurations whose 95% Wilson interval
+ * of the win rate lies entirely below the interval of the best configuration stop playing. The
+ * tournament ends when one configuration is left or all have played {@code --games}.
+ * <p>
+ * Usage: {@code java sim.Tournament [--players 2|4] [--games n] [--min-games n] [--round-games n]
+ * [--threads n] [--seed n] [--size WxH] [--planets n] [--sweep grid|random] [--configs n]
+ * [--param name=v1,v2,...|name=lo:hi]...}
+ */
+public class Tournament {
+	private static final double Z = 1.96;
+
+	private final int players;
+	private final int maxGames;
+	private final int minGames;
+	private final int roundGames;
+	private final int threads;
+	private final int width;
+	private final int height;
+	private final int planets;
+	private final Random random;
+	private final List<Contestant> contestants = new ArrayList<>();
+
+	private int gamesPlayed;
+	private long turnsPlayed;
+	private int draws;
+	private int errors;
+	private long nanos;
+
+	public Tournament(List<StrategyParameters> configurations, int players, int maxGames, int minGames, int roundGames,
+	                  int threads, long seed, int width, int height, int planets) {
+		this.players = players;
+		this.maxGames = maxGames;
+		this.minGames = minGames;
+		this.roundGames = roundGames;
+		this.threads = threads;
+		this.width = width;
+		this.height = height;
+		this.planets = planets;
+		this.random = new Random(seed);
+		for (StrategyParameters configuration : configurations) contestants.add(new Contestant(configuration));
+	}
+
+	public static void main(String[] args) throws InterruptedException, ExecutionException {
+		// games already run in parallel, so every strategy plans on its own thread
+		if (System.getProperty("bot.planningThreads") == null) System.setProperty("bot.planningThreads", "1");
+		Log.setLevel(Log.Level.OFF);
+
+		int players = 2;
+		int games = 200;
+		int minGames = 20;
+		int roundGames = 10;
+		int threads = Runtime.getRuntime().availableProcessors();
+		long seed = 42;
+		int width = 240;
+		int height = 160;
+		int planets = 16;
+		String sweep = "grid";
+		int configs = 10;
+		Map<String, String> parameters = new LinkedHashMap<>();
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "--players": players = Integer.parseInt(args[++i]); break;
+				case "--games": games = Integer.parseInt(args[++i]); break;
+				case "--min-games": minGames = Integer.parseInt(args[++i]); break;
+				case "--round-games": roundGames = Integer.parseInt(args[++i]); break;
+				case "--threads": threads = Integer.parseInt(args[++i]); break;
+				case "--seed": seed = Long.parseLong(args[++i]); break;
+				case "--size":
+					String[] size = args[++i].split("x");
+					width = Integer.parseInt(size[0]);
+					height = Integer.parseInt(size[1]);
+					break;
+				case "--planets": planets = Integer.parseInt(args[++i]); break;
+				case "--sweep": sweep = args[++i]; break;
+				case "--configs": configs = Integer.parseInt(args[++i]); break;
+				case "--param":
+					String[] parameter = args[++i].split("=", 2);
+					if (parameter.length != 2) throw new IllegalArgumentException("Expected name=values: " + args[i]);
+					parameters.put(parameter[0], parameter[1]);
+					break;
+				default: throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+
+		List<StrategyParameters> configurations = "random".equals(sweep)
+				? randomSweep(parameters, configs, new Random(seed))
+				: gridSweep(parameters);
+		if (!configurations.contains(StrategyParameters.DEFAULT)) configurations.add(0, StrategyParameters.DEFAULT);
+		if (configurations.size() < 2) throw new IllegalArgumentException("Nothing to compare, add --param");
+
+		Tournament tournament = new Tournament(configurations, players, games, minGames, roundGames, threads, seed, width, height, planets);
+		System.out.printf("%d configurations, %d-player games on %dx%d, %d threads%n", configurations.size(), players, width, height, threads);
+		tournament.run();
+		System.out.print(tournament.report());
+	}
+
+	/**
+	 * All combinations of the comma-separated values of every parameter.
+	 */
+	public static List<StrategyParameters> gridSweep(Map<String, String> parameters) {
+		List<StrategyParameters> grid = new ArrayList<>();
+		grid.add(StrategyParameters.DEFAULT);
+		for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+			List<StrategyParameters> expanded = new ArrayList<>();
+			for (StrategyParameters configuration : grid) {
+				for (String value : parameter.getValue().split(",")) expanded.add(configuration.with(parameter.getKey(), value.trim()));
+			}
+			grid = expanded;
+		}
+		return grid;
+	}
+
+	/**
+	 * Draws every parameter uniformly from its {@code lo:hi} range or its comma-separated values.
+	 */
+	public static List<StrategyParameters> randomSweep(Map<String, String> parameters, int count, Random random) {
+		List<StrategyParameters> configurations = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			StrategyParameters configuration = StrategyParameters.DEFAULT;
+			for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+				String spec = parameter.getValue();
+				String value;
+				if (spec.contains(":")) {
+					String[] range = spec.split(":");
+					double lo = Double.parseDouble(range[0]);
+					double hi = Double.parseDouble(range[1]);
+					value = Double.toString(lo + random.nextDouble() * (hi - lo));
+				} else {
+					String[] values = spec.split(",");
+					value = values[random.nextInt(values.length)].trim();
+				}
+				configuration = configuration.with(parameter.getKey(), value);
+			}
+			configurations.add(configuration);
+		}
+		return configurations;
+	}
+
+	/**
+	 * Plays rounds until one configuration is left or all have played the maximum number of games.
+	 */
+	public void run() throws InterruptedException, ExecutionException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "match");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long start = System.nanoTime();
+		try {
+			while (true) {
+				List<Contestant> active = active();
+				if (active.size() < 2 || active.stream().allMatch(c -> c.games >= maxGames)) break;
+				playRound(active, executor);
+				eliminate(active);
+			}
+		} finally {
+			executor.shutdownNow();
+			nanos = System.nanoTime() - start;
+		}
+	}
+
+	private void playRound(List<Contestant> active, ExecutorService executor) throws InterruptedException, ExecutionException {
+		// every active configuration gets about roundGames seats, at random seats of random games
+		int seatCount = active.size() * roundGames;
+		List<Contestant> seatPool = new ArrayList<>(seatCount);
+		for (int i = 0; i < roundGames; i++) seatPool.addAll(active);
+		Collections.shuffle(seatPool, random);
+
+		List<Contestant[]> tables = new ArrayList<>();
+		List<Callable<Match>> matches = new ArrayList<>();
+		for (int first = 0; first + players <= seatPool.size(); first += players) {
+			Contestant[] table = seatPool.subList(first, first + players).toArray(new Contestant[0]);
+			StrategyParameters[] seats = new StrategyParameters[players];
+			for (int seat = 0; seat < players; seat++) seats[seat] = table[seat].configuration;
+			long mapSeed = random.nextLong();
+			long matchSeed = random.nextLong();
+			tables.add(table);
+			matches.add(() -> {
+				byte[] frame = new GameStateGenerator(mapSeed, players, 3, planets, width, height, 0)
+						.frame(0).getBytes(StandardCharsets.US_ASCII);
+				return new Match(width, height, frame, seats, matchSeed).play();
+			});
+		}
+
+		List<Future<Match>> results = executor.invokeAll(matches);
+		for (int m = 0; m < results.size(); m++) {
+			Match match = results.get(m).get();
+			Contestant[] table = tables.get(m);
+			for (Contestant contestant : table) contestant.games++;
+			if (match.getWinner() >= 0) table[match.getWinner()].wins++;
+			else draws++;
+			gamesPlayed++;
+			turnsPlayed += match.getTurns();
+			errors += match.getErrors();
+		}
+	}
+
+	// stops configurations that are clearly worse than the best one
+	private void eliminate(List<Contestant> active) {
+		if (active.stream().anyMatch(c -> c.games < minGames)) return;
+		double best = active.stream().mapToDouble(Contestant::lower).max().orElse(0);
+		for (Contestant contestant : active) {
+			if (contestant.upper() < best) contestant.stoppedAfter = contestant.games;
+		}
+	}
+
+	private List<Contestant> active() {
+		List<Contestant> active = new ArrayList<>();
+		for (Contestant contestant : contestants) if (contestant.stoppedAfter < 0) active.add(contestant);
+		return active;
+	}
+
+	public String report() {
+		double seconds = nanos / 1e9;
+		StringBuilder report = new StringBuilder();
+		report.append(String.format(Locale.ROOT, "%d games, %d turns in %.1f s: %.2f games/s, %.0f turns/s, %d draws, %d strategy errors%n",
+				gamesPlayed, turnsPlayed, seconds, gamesPlayed / seconds, turnsPlayed / seconds, draws, errors));
+		report.append(String.format(Locale.ROOT, "%-8s %6s %6s %7s %17s  %s%n", "status", "games", "wins", "rate", "95% interval", "configuration"));
+		List<Contestant> ranked = new ArrayList<>(contestants);
+		ranked.sort(Comparator.comparingDouble(Contestant::rate).reversed());
+		for (Contestant contestant : ranked) {
+			report.append(String.format(Locale.ROOT, "%-8s %6d %6d %6.1f%% [%5.1f%%, %5.1f%%]  %s%n",
+					contestant.stoppedAfter < 0 ? "active" : "stopped", contestant.games, contestant.wins,
+					100 * contestant.rate(), 100 * contestant.lower(), 100 * contestant.upper(), contestant.configuration.describe()));
+		}
+		return report.toString();
+	}
+
+	public List<Contestant> getContestants() {
+		return contestants;
+	}
+
+	/**
+	 * @return the 95% Wilson score interval of a win rate
+	 */
+	public static double[] wilson(int wins, int games) {
+		if (games == 0) return new double[] {0, 1};
+		double rate = (double) wins / games;
+		double denominator = 1 + Z * Z / games;
+		double center = (rate + Z * Z / (2.0 * games)) / denominator;
+		double half = Z * Math.sqrt(rate * (1 - rate) / games + Z * Z / (4.0 * games * games)) / denominator;
+		return new double[] {Math.max(0, center - half), Math.min(1, center + half)};
+	}
+
+	public static class Contestant {
+		private final StrategyParameters configuration;
+		private int games;
+		private int wins;
+		private int stoppedAfter = -1;
+
+		Contestant(StrategyParameters configuration) {
+			this.configuration = configuration;
+		}
+
+		public StrategyParameters getConfiguration() {
+			return configuration;
+		}
+
+		public int getGames() {
+			return games;
+		}
+
+		public int getWins() {
+			return wins;
+		}
+
+		public boolean isStopped() {
+			return stoppedAfter >= 0;
+		}
+
+		public double rate() {
+			return games == 0 ? 0 : (double) wins / games;
+		}
+
+		public double lower() {
+			return wilson(wins, games)[0];
+		}
+
+		public double upper() {
+			return wilson(wins, games)[1];
+		}
+
+		@Override
+		public String toString() {
+			return configuration.describe() + ": " + wins + "/" + games;
+		}
+	}
+}
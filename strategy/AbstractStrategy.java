@@ -1,120 +1,204 @@
 package strategy;
 
 import hlt.*;
+import utils.IntSet;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 public abstract class AbstractStrategy {
+	/** Threads for speculative planning, set through -Dbot.planningThreads; below 2 plans sequentially. */
+	private static final int PLANNING_THREADS = Integer.getInteger("bot.planningThreads",
+			Math.min(8, Runtime.getRuntime().availableProcessors() - 1));
+	private static final ForkJoinPool PLANNING_POOL = PLANNING_THREADS > 1 ? new ForkJoinPool(PLANNING_THREADS) : null;
+	private static final int MIN_PARALLEL_SHIPS = 8;
+
 	protected GameMap gameMap;
-	protected Map<Integer, Entity> shipTargets = new HashMap<>();
-	protected List<Integer> shipsOnHold = new LinkedList<>();
+	protected TargetRegistry shipTargets;
+	protected NeighbourCache neighbours;
+	protected IntSet shipsOnHold = new IntSet();
+	protected CollisionResolver collisionResolver = new CollisionResolver();
+	protected TurnScheduler scheduler = new TurnScheduler();
+	protected TargetReservations reservations = new TargetReservations();
 
 	public AbstractStrategy(GameMap gameMap) {
 		this.gameMap = gameMap;
+		this.shipTargets = new TargetRegistry(gameMap);
+		this.neighbours = new NeighbourCache(gameMap);
 	}
 
 	public abstract List<Move> apply();
 
 	public abstract boolean keep();
 
+	public NeighbourCache getNeighbourCache() {
+		return neighbours;
+	}
+
+	public void setScheduler(TurnScheduler scheduler) {
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * Plans one move per ship, most urgent ships first, until the scheduler asks to stop. Ships not
+	 * reached get their fallback move. Every move is handed to the scheduler as soon as it is
+	 * planned, so the watchdog can send it should the turn run out before the plan is complete.
+	 * <p>
+	 * With a planning pool, every ship first guesses its target through {@link #speculativeTarget}
+	 * in parallel and navigates there, which fills the turn's navigation cache. The planner then
+	 * runs sequentially in priority order and picks up the cached results wherever the guess was
+	 * right, so the moves are the same as without the pool.
+	 */
+	protected List<Move> planShips(Collection<Ship> ships, Function<Ship, Move> planner) {
+		List<Ship> ordered = new ArrayList<>(ships);
+		ordered.sort(shipPriority());
+		if (PLANNING_POOL != null && ordered.size() >= MIN_PARALLEL_SHIPS) speculate(ordered);
+
+		List<Move> moves = new ArrayList<>(ordered.size());
+		for (Ship ship : ordered) {
+			if (scheduler.shouldStop(TurnScheduler.Phase.STRATEGY)) break;
+			Move move = planner.apply(ship);
+			scheduler.planned(move);
+			moves.add(move);
+		}
+
+		int skipped = ordered.size() - moves.size();
+		if (skipped > 0) {
+			Log.warn(() -> String.format("Out of planning time, %d of %d ships get fallback moves.", skipped, ordered.size()));
+			scheduler.skipped(skipped);
+			for (Ship ship : ordered.subList(moves.size(), ordered.size())) moves.add(scheduler.fallbackMove(gameMap, ship));
+		}
+		return moves;
+	}
+
+	private void speculate(List<Ship> ordered) {
+		long start = System.nanoTime();
+		gameMap.getSpatialIndex(); // build it once before the threads share it
+		reservations.clear();
+		for (int i = 0; i < shipTargets.size(); i++) {
+			reservations.claim(shipTargets.shipAt(i), shipTargets.targetAt(i), Integer.MAX_VALUE);
+		}
+		try {
+			PLANNING_POOL.submit(() -> ordered.parallelStream().forEach(ship -> {
+				if (scheduler.shouldStop(TurnScheduler.Phase.STRATEGY)) return;
+				Entity target = speculativeTarget(ship);
+				if (target != null) Navigation.navigateShipToDock(gameMap, ship, target, Constants.MAX_SPEED);
+			})).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			Log.warn(() -> "Speculative planning failed: " + e.getCause());
+		}
+		scheduler.addNanos(TurnScheduler.Phase.NAVIGATION, System.nanoTime() - start);
+	}
+
+	/**
+	 * Guesses the target the planner will pick for the ship, so its navigation can be computed ahead.
+	 * Runs on planning threads: it must not log or modify strategy state, and competes for targets
+	 * through {@link #reservations} only. A wrong guess costs time, never a different move.
+	 *
+	 * @return the likely target, or null to skip the ship
+	 */
+	protected Entity speculativeTarget(Ship ship) {
+		return shipTargets.getTarget(ship.getId());
+	}
+
+	/**
+	 * Claims the nearest entity accepted by the filter that still has room, for use in
+	 * {@link #speculativeTarget(Ship)}.
+	 */
+	protected Entity claimClosest(Ship ship, Predicate<Entity> filter, int capacity) {
+		SpatialIndex.DistanceIterator candidates = gameMap.entitiesByDistance(ship, filter);
+		while (candidates.hasNext()) {
+			Entity candidate = candidates.next();
+			if (reservations.claim(ship.getId(), candidate, capacity)) return candidate;
+		}
+		return null;
+	}
+
+	/**
+	 * Ships closest to an enemy ship come first, since they can least afford to idle.
+	 */
+	protected Comparator<Ship> shipPriority() {
+		int myId = gameMap.getMyPlayerId();
+		Map<Ship, Double> enemyDistance = new HashMap<>();
+		return Comparator.comparingDouble(ship -> enemyDistance.computeIfAbsent(ship, s -> {
+			List<Entity> closest = gameMap.kNearest(s, 1, e -> e instanceof Ship && e.getOwner() != myId);
+			return closest.isEmpty() ? Double.MAX_VALUE : s.getDistanceTo(closest.get(0));
+		}));
+	}
+
 	protected List<Planet> findClosestOwnPlanets(Ship ship) {
-		return gameMap.nearbyEntitiesByDistance(ship).entrySet().stream()
-				.sorted(Comparator.comparingDouble(Map.Entry::getKey))
-				.map(Map.Entry::getValue)
-				.filter(e -> e instanceof Planet)
+		return neighbours.all(ship, NeighbourCache.Kind.OWN_PLANETS).stream()
 				.map(e -> (Planet) e)
-				.filter(p -> p.isOwned() && p.getOwner() == gameMap.getMyPlayer().getId())
-				.filter(p -> !shipTargets.values().contains(p))
+				.filter(p -> !shipTargets.isTargeted(p))
 				.collect(Collectors.toList());
 	}
 
 	protected Optional<Planet> findClosestOwnPlanet(Ship ship) {
-		List<Planet> ownPlanets = findClosestOwnPlanets(ship);
-		return ownPlanets.size() > 0 ? Optional.of(ownPlanets.get(0)) : Optional.empty();
+		return Optional.ofNullable((Planet) neighbours.first(ship, NeighbourCache.Kind.OWN_PLANETS, p -> !shipTargets.isTargeted(p)));
 	}
 
 	protected List<Planet> findClosestEmptyPlanets(Ship ship) {
-		return gameMap.nearbyEntitiesByDistance(ship).entrySet().stream()
-				.sorted(Comparator.comparingDouble(Map.Entry::getKey))
-				.map(Map.Entry::getValue)
-				.filter(e -> e instanceof Planet)
+		return neighbours.all(ship, NeighbourCache.Kind.EMPTY_PLANETS).stream()
 				.map(e -> (Planet) e)
-				.filter(p -> !p.isOwned())
 				.collect(Collectors.toList());
 	}
 
 	protected Optional<Planet> findClosestEmptyNonTargetedPlanet(Ship ship) {
-		return findClosestEmptyPlanets(ship).stream()
-				.filter(p -> !shipTargets.values().contains(p))
-				.findFirst();
+		return Optional.ofNullable((Planet) neighbours.first(ship, NeighbourCache.Kind.EMPTY_PLANETS, p -> !shipTargets.isTargeted(p)));
 	}
 
 	protected List<Ship> findClosestEnemyShips(Ship ship) {
-		return gameMap.nearbyEntitiesByDistance(ship).entrySet().stream()
-				.sorted(Comparator.comparingDouble(Map.Entry::getKey))
-				.map(Map.Entry::getValue)
-				.filter(e -> e instanceof Ship)
+		return neighbours.all(ship, NeighbourCache.Kind.ENEMY_SHIPS).stream()
 				.map(e -> (Ship) e)
-				.filter(s -> s.getOwner() != gameMap.getMyPlayer().getId())
 				.collect(Collectors.toList());
 	}
 
 	protected List<Ship> findClosestNonTargetedEnemyShips(Ship ship) {
 		return findClosestEnemyShips(ship).stream()
-				.filter(s -> !shipTargets.values().contains(s))
+				.filter(s -> !shipTargets.isTargeted(s))
 				.collect(Collectors.toList());
 	}
 
 	protected List<Ship> findClosestTargetedEnemyShips(Ship ship) {
 		return findClosestEnemyShips(ship).stream()
-				.filter(s -> shipTargets.values().contains(s))
+				.filter(shipTargets::isTargeted)
 				.collect(Collectors.toList());
 	}
 
 	protected Optional<Ship> findClosestEnemyShip(Ship ship) {
-		List<Ship> ships = findClosestEnemyShips(ship);
-		return ships.size() > 0 ? Optional.of(ships.get(0)) : Optional.empty();
+		return Optional.ofNullable((Ship) neighbours.first(ship, NeighbourCache.Kind.ENEMY_SHIPS, null));
 	}
 
 	protected Optional<Ship> findClosestTargetedEnemyShip(Ship ship) {
-		List<Ship> ships = findClosestTargetedEnemyShips(ship);
-		return ships.size() > 0 ? Optional.of(ships.get(0)) : Optional.empty();
+		return Optional.ofNullable((Ship) neighbours.first(ship, NeighbourCache.Kind.ENEMY_SHIPS, shipTargets::isTargeted));
 	}
 
 	protected Optional<Ship> findClosestNonTargetedEnemyShip(Ship ship) {
-		List<Ship> ships = findClosestNonTargetedEnemyShips(ship);
-		return ships.size() > 0 ? Optional.of(ships.get(0)) : Optional.empty();
+		return Optional.ofNullable((Ship) neighbours.first(ship, NeighbourCache.Kind.ENEMY_SHIPS, s -> !shipTargets.isTargeted(s)));
 	}
 
 	protected Optional<Entity> getShipTarget(Ship ship) {
-		if (!shipTargets.containsKey(ship.getId())) return Optional.empty();
-		else {
-			Entity target = shipTargets.get(ship.getId());
-			if (target instanceof Planet && gameMap.getPlanet(target.getId()) == null) return Optional.empty();
-			else if (target instanceof Ship && gameMap.getAllShips().stream().noneMatch(s -> s.getId() == target.getId())) return Optional.empty();
-			return Optional.of(target);
-		}
+		return Optional.ofNullable(shipTargets.getTarget(ship.getId()));
 	}
 
 	protected void updateTargets() {
-		shipTargets = shipTargets.entrySet().stream()
-				.map(t -> {
-					Map.Entry<Integer, Entity> entry = t;
-					if (t.getValue() instanceof Ship) entry = new AbstractMap.SimpleEntry(t.getKey(), gameMap.getShip(t.getValue().getOwner(), t.getValue().getId()));
-					if (t.getValue() instanceof Planet) entry = new AbstractMap.SimpleEntry(t.getKey(), gameMap.getPlanet(t.getValue().getId()));
-					return entry;
-				})
-				.filter(e -> e != null && e.getKey() != null && e.getValue() != null)
-				.collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+		shipTargets.purge(gameMap.getChanges());
 	}
 
 	protected Move targetTo(Ship ship, Entity target) {
-		Log.log(String.format("Ship %s navigates to %s with distance %s at %f, %f.", ship.getId(), target.summary(), ship.getDistanceTo(target), target.getXPos(), target.getYPos()));
-		if (target instanceof Planet) Log.log(String.format("Ship %d --> planet %d: %d", ship.getId(), target.getId(), ship.orientTowardsInDeg(target)));
 		if (target == null) return new Move(Move.MoveType.Noop, ship);
-		shipTargets.put(ship.getId(), target);
-		Move navigationMove = new Navigation().navigateShipToDock(gameMap, ship, target, Constants.MAX_SPEED);
+		Log.debug(() -> String.format("Ship %s navigates to %s with distance %s at %f, %f.", ship.getId(), target.summary(), ship.getDistanceTo(target), target.getXPos(), target.getYPos()));
+		if (target instanceof Planet) Log.debug(() -> String.format("Ship %d --> planet %d: %d", ship.getId(), target.getId(), ship.orientTowardsInDeg(target)));
+		shipTargets.assign(ship.getId(), target);
+		long start = System.nanoTime();
+		Move navigationMove = Navigation.navigateShipToDock(gameMap, ship, target, Constants.MAX_SPEED);
+		scheduler.addNanos(TurnScheduler.Phase.NAVIGATION, System.nanoTime() - start);
 		return navigationMove != null ? navigationMove : new Move(Move.MoveType.Noop, ship);
 	}
 
@@ -139,27 +223,29 @@ public abstract class AbstractStrategy {
 
 	protected boolean mayCollide(Ship ship) {
 		Collection<Ship> myShips = gameMap.getMyPlayer().getShips().values();
-		if (!shipTargets.containsKey(ship.getId())) return false;
-		int angle1 = ship.orientTowardsInDeg(shipTargets.get(ship.getId()));
+		Entity target = shipTargets.getTarget(ship.getId());
+		if (target == null) return false;
+		int angle1 = ship.orientTowardsInDeg(target);
 		return myShips.stream()
 				.filter(s -> !s.equals(ship))
 				.filter(s -> s.getDockingStatus().equals(Ship.DockingStatus.Undocked))
-				.filter(s -> !shipsOnHold.contains(Integer.valueOf(s.getId())))
+				.filter(s -> !shipsOnHold.contains(s.getId()))
 				.anyMatch(s -> {
-					if (!shipTargets.containsKey(s.getId()) || ship.getDistanceTo(s) > 5) return false;
-					int angle2 = s.orientTowardsInDeg(shipTargets.get(s.getId()));
+					Entity other = shipTargets.getTarget(s.getId());
+					if (other == null || ship.getDistanceTo(s) > 5) return false;
+					int angle2 = s.orientTowardsInDeg(other);
 					return ((Math.abs(angle1 - angle2) >= 30 && Math.abs(angle1 - angle2) <= 90) || (Math.abs(angle1 - angle2) >= 270 && Math.abs(angle1 - angle2) <= 330));
 				});
 	}
 
 	protected Optional<Move> avoidCollision(Ship ship, boolean skipCheck) {
 		if (skipCheck || mayCollide(ship)) {
-			if (!shipsOnHold.contains(Integer.valueOf(ship.getId()))) {
-				Log.log(String.format("Ship %d stopping due to potential collision.", ship.getId()));
+			if (!shipsOnHold.contains(ship.getId())) {
+				Log.debug(() -> String.format("Ship %d stopping due to potential collision.", ship.getId()));
 				shipsOnHold.add(ship.getId());
 				return Optional.of(new Move(Move.MoveType.Noop, ship));
 			}
-			shipsOnHold.remove(Integer.valueOf(ship.getId())); // only hold for one turn
+			shipsOnHold.remove(ship.getId()); // only hold for one turn
 		}
 		return Optional.empty();
 	}
@@ -169,13 +255,13 @@ public abstract class AbstractStrategy {
 	}
 
 	protected List<Move> modifyAvoidCollisions(List<Move> moves) {
-		return moves.stream()
-				.map(m -> {
-					if (!mayCollide(m.getShip())) return m;
-					Optional<Move> avoidanceMove = avoidCollision(m.getShip(), true);
-					if (!avoidanceMove.isPresent()) return m;
-					return avoidanceMove.get();
-				})
-				.collect(Collectors.toList());
+		scheduler.enter(TurnScheduler.Phase.COLLISION);
+		if (scheduler.shouldStop(TurnScheduler.Phase.COLLISION)) {
+			Log.warn(() -> "Out of time, skipping collision resolution.");
+			return moves;
+		}
+		List<Move> resolved = collisionResolver.resolve(gameMap, moves);
+		Log.info(collisionResolver::toString);
+		return resolved;
 	}
 }
@@ -4,7 +4,6 @@ import hlt.*;
 
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 public class AggressiveStrategy extends AbstractStrategy {
 	private boolean keep = true;
@@ -17,26 +16,32 @@ public class AggressiveStrategy extends AbstractStrategy {
 	public List<Move> apply() {
 		updateTargets();
 
-		List<Move> moves = gameMap.getMyPlayer().getShips().values().stream()
-				.map(ship -> {
-					// Does the ship already have a target? If yes, keep following it
-					Optional<Entity> target = getShipTarget(ship);
-					if (isTargetEnemyShipValid(target)) {
-						Ship targetShip = (Ship) target.get();
-						Log.log(String.format("Ship %d has valid target ship %d.", ship.getId(), target.get().getId()));
-						return targetTo(ship, targetShip);
-					}
-
-					Optional<Ship> potentialTarget = findClosestNonTargetedEnemyShip(ship);
-					if (!potentialTarget.isPresent()) potentialTarget = findClosestTargetedEnemyShip(ship);
-					keep = potentialTarget.isPresent();
-					return targetTo(ship, potentialTarget.orElse(null));
-				})
-				.collect(Collectors.toList());
+		List<Move> moves = planShips(gameMap.getMyPlayer().getShips().values(), ship -> {
+			// Does the ship already have a target? If yes, keep following it
+			Optional<Entity> target = getShipTarget(ship);
+			if (isTargetEnemyShipValid(target)) {
+				Ship targetShip = (Ship) target.get();
+				Log.debug(() -> String.format("Ship %d has valid target ship %d.", ship.getId(), target.get().getId()));
+				return targetTo(ship, targetShip);
+			}
+
+			Optional<Ship> potentialTarget = findClosestNonTargetedEnemyShip(ship);
+			if (!potentialTarget.isPresent()) potentialTarget = findClosestTargetedEnemyShip(ship);
+			keep = potentialTarget.isPresent();
+			return targetTo(ship, potentialTarget.orElse(null));
+		});
 
 		return modifyAvoidCollisions(moves);
 	}
 
+	@Override
+	protected Entity speculativeTarget(Ship ship) {
+		Entity current = shipTargets.getTarget(ship.getId());
+		if (current instanceof Ship) return current;
+		int myId = gameMap.getMyPlayerId();
+		return claimClosest(ship, e -> e instanceof Ship && e.getOwner() != myId, 1);
+	}
+
 	@Override
 	public boolean keep() {
 		return keep;
@@ -6,76 +6,142 @@ import java.util.*;
 import java.util.stream.Collectors;
 
 public class BalancedStrategy extends AbstractStrategy {
-	private static final int MAX_OWN_DOCKINGS = 3;
+	// Most preferable option is to go to the next empty planet.
+	// If it's too far, but an enemy ship is near, attack that ship, even more if
+	// another one of ours ships has also targeted the enemy, because 2 vs. 1 is always good.
+	// If enemy ships and empty planets are both too far or not available at all, target a
+	// planet we already own, but never dock more than 3 of our own ships at the same planet.
+	// The weights and the docking limit come from StrategyParameters. Ships the assignment leaves
+	// out, because every planet and nearby enemy is taken, attack their closest enemy regardless.
+	private static final int ENEMY_CANDIDATES = 4;
+	private static final int ENEMY_CAPACITY = 2;
+
+	private final TargetAssignment targetAssignment = new TargetAssignment();
+	private final StrategyParameters parameters;
 
 	public BalancedStrategy(GameMap gameMap) {
+		this(gameMap, StrategyParameters.DEFAULT);
+	}
+
+	public BalancedStrategy(GameMap gameMap, StrategyParameters parameters) {
 		super(gameMap);
+		this.parameters = parameters;
 	}
 
 	@Override
 	public List<Move> apply() {
 		updateTargets();
 
-		List<Move> moves = gameMap.getMyPlayer().getShips().values().stream()
+		List<Ship> undockedShips = gameMap.getMyPlayer().getShips().values().stream()
 				.filter(ship -> ship.getDockingStatus() == Ship.DockingStatus.Undocked)
-				.map(ship -> {
-					//Optional<Move> m = avoidCollision(ship);
-					//if (avoidCollision(ship).isPresent()) return m.get();
-
-					// Does the ship already have a target? If yes, keep following it
-					Optional<Entity> target = getShipTarget(ship);
-					if (isTargetPlanetValid(target)) {
-						Planet targetPlanet = (Planet) target.get();
-						Log.log(String.format("Ship %s has target planet %s with distance of %s.", ship.getId(), targetPlanet.getId(), ship.getDistanceTo(targetPlanet)));
-						if (ship.canDock(targetPlanet)) {
-							shipTargets.remove(ship.getId());
-							return new DockMove(ship, targetPlanet);
-						}
-						return targetTo(ship, targetPlanet);
-					}
-					else if (isTargetEnemyShipValid(target)) {
-						Ship targetEnemy = (Ship) target.get();
-						Log.log(String.format("Ship %s has target enemy ship %s with distance of %s.", ship.getId(), targetEnemy.getId(), ship.getDistanceTo(targetEnemy)));
-						return targetTo(ship, targetEnemy);
-					}
-
-					shipTargets.remove(ship.getId());
-
-					Log.log(String.format("Ship %s doesn't have a target, yet.", ship.getId()));
-
-					// Choose a target
-					Optional<Planet> closestEmptyPlanet = findClosestEmptyNonTargetedPlanet(ship);
-					Optional<Planet> closestOwnPlanet = findClosestOwnPlanets(ship).stream().filter(this::isDockingCandidate).findFirst();
-					Optional<Ship> closestEnemy = findClosestEnemyShip(ship);
-					Optional<Ship> closestTargetedEnemy = findClosestTargetedEnemyShip(ship);
-
-					// Most preferable option is to go to the next empty planet.
-					// If it's too far, but an enemy ship is near, attack that ship, even more if
-					// another one of ours ships has also targeted the enemy, because 2 vs. 1 is always good.
-					// If enemy ships and empty planets are both too far or not available at all, target a
-					// planet we already own, but never dock more than 3 of our own ships at the same planet.
-					Map<Optional, Double> weightMap = new HashMap<>();
-					weightMap.put(closestEmptyPlanet, 1.0);
-					weightMap.put(closestOwnPlanet, 4.0);
-					weightMap.put(closestTargetedEnemy, 2.0);
-					weightMap.put(closestEnemy, 2.5);
-
-					List<Entity> priorityList = getTargetPriorityByWeightedDistance(ship, new Optional[]{closestEmptyPlanet, closestOwnPlanet, closestTargetedEnemy, closestEnemy}, weightMap);
-					if (!priorityList.isEmpty()) return targetTo(ship, priorityList.get(0));
-
-					Log.log(String.format("Ship %s can't find a good target anymore.", ship.getId()));
-
-					// - No more empty planets
-					// - No more planets with less than 3 of our own ships
-					// - No more enemy ships
-					// --> actually, if this even happens, we should have won already
-					return new Move(Move.MoveType.Noop, ship);
-				})
 				.collect(Collectors.toList());
+		assignTargets(undockedShips);
+
+		List<Move> moves = planShips(undockedShips, ship -> {
+			//Optional<Move> m = avoidCollision(ship);
+			//if (avoidCollision(ship).isPresent()) return m.get();
+
+			// Does the ship already have a target? If yes, keep following it
+			Optional<Entity> target = getShipTarget(ship);
+			if (isTargetPlanetValid(target)) {
+				Planet targetPlanet = (Planet) target.get();
+				Log.debug(() -> String.format("Ship %s has target planet %s with distance of %s.", ship.getId(), targetPlanet.getId(), ship.getDistanceTo(targetPlanet)));
+				if (ship.canDock(targetPlanet)) {
+					shipTargets.release(ship.getId());
+					return new DockMove(ship, targetPlanet);
+				}
+				return targetTo(ship, targetPlanet);
+			}
+			else if (isTargetEnemyShipValid(target)) {
+				Ship targetEnemy = (Ship) target.get();
+				Log.debug(() -> String.format("Ship %s has target enemy ship %s with distance of %s.", ship.getId(), targetEnemy.getId(), ship.getDistanceTo(targetEnemy)));
+				return targetTo(ship, targetEnemy);
+			}
+
+			shipTargets.release(ship.getId());
+
+			Log.debug(() -> String.format("Ship %s doesn't have a target, yet.", ship.getId()));
+
+			Entity assigned = targetAssignment.getTarget(ship);
+			if (assigned != null) return targetTo(ship, assigned);
+
+			Optional<Ship> closestEnemy = findClosestEnemyShip(ship);
+			if (closestEnemy.isPresent()) return targetTo(ship, closestEnemy.get());
+
+			Log.debug(() -> String.format("Ship %s can't find a good target anymore.", ship.getId()));
+
+			// - No more empty planets
+			// - No more planets with less than 3 of our own ships
+			// - No more enemy ships
+			// --> actually, if this even happens, we should have won already
+			return new Move(Move.MoveType.Noop, ship);
+		});
 
 		return modifyAvoidCollisions(moves);
 	}
 
+	@Override
+	protected Entity speculativeTarget(Ship ship) {
+		Entity current = shipTargets.getTarget(ship.getId());
+		if (current instanceof Planet && ship.canDock((Planet) current)) return null;
+		if (current != null) return current;
+		Entity assigned = targetAssignment.getTarget(ship);
+		if (assigned != null) return assigned;
+
+		// the neighbour cache is not thread-safe, so the closest enemy comes from the map directly
+		int myId = gameMap.getMyPlayerId();
+		List<Entity> enemies = gameMap.kNearest(ship, 1, e -> e instanceof Ship && e.getOwner() != myId);
+		return enemies.isEmpty() ? null : enemies.get(0);
+	}
+
+	/**
+	 * Solves one assignment for all ships without a valid target. Targets are the docking candidates
+	 * and the enemy ships closest to any of these ships, with room reduced by the ships already
+	 * following them.
+	 */
+	private void assignTargets(List<Ship> undockedShips) {
+		targetAssignment.clear();
+		EntityStore store = gameMap.getEntityStore();
+		int myId = gameMap.getMyPlayerId();
+
+		// -1: not yet seen, -2: no room left
+		int[] columnBySlot = new int[store.size()];
+		Arrays.fill(columnBySlot, -1);
+		for (int slot = store.firstPlanetSlot(); slot < store.size(); slot++) {
+			Planet planet = (Planet) store.entity(slot);
+			if (!isDockingCandidate(planet)) continue;
+			int room = planet.isOwned()
+					? Math.min(planet.getDockingSpots(), parameters.getMaxOwnDockings()) - planet.numDockedShips()
+					: planet.getDockingSpots();
+			room -= shipTargets.countFollowers(planet);
+			if (room > 0) columnBySlot[slot] = targetAssignment.addTarget(planet, planet.isOwned() ? parameters.getOwnPlanetWeight() : parameters.getEmptyPlanetWeight(), room);
+		}
+
+		for (Ship ship : undockedShips) {
+			Optional<Entity> target = getShipTarget(ship);
+			if (isTargetPlanetValid(target) || isTargetEnemyShipValid(target)) continue;
+
+			targetAssignment.addShip(ship);
+			for (int slot = store.firstPlanetSlot(); slot < store.size(); slot++) {
+				if (columnBySlot[slot] >= 0) targetAssignment.addCandidate(columnBySlot[slot]);
+			}
+			for (Entity enemy : gameMap.kNearest(ship, ENEMY_CANDIDATES, e -> e instanceof Ship && e.getOwner() != myId)) {
+				int slot = store.slotOf(enemy);
+				if (columnBySlot[slot] == -1) {
+					int followers = shipTargets.countFollowers(enemy);
+					int room = ENEMY_CAPACITY - followers;
+					columnBySlot[slot] = room > 0
+							? targetAssignment.addTarget(enemy, followers > 0 ? parameters.getTargetedEnemyWeight() : parameters.getEnemyWeight(), room)
+							: -2;
+				}
+				if (columnBySlot[slot] >= 0) targetAssignment.addCandidate(columnBySlot[slot]);
+			}
+		}
+
+		targetAssignment.solve();
+		Log.info(targetAssignment::toString);
+	}
+
 	@Override
 	public boolean keep() {
 		return true;
@@ -85,7 +151,7 @@ public class BalancedStrategy extends AbstractStrategy {
 	protected boolean isDockingCandidate(Planet target) {
 		if (!super.isDockingCandidate(target)) return false;
 		if (target.isOwned() && target.getOwner() != gameMap.getMyPlayer().getId()) return false;
-		if (target.numDockedShips() >= MAX_OWN_DOCKINGS) return false;
+		if (target.numDockedShips() >= parameters.getMaxOwnDockings()) return false;
 		return true;
 	}
 
@@ -94,12 +160,4 @@ public class BalancedStrategy extends AbstractStrategy {
 		if (!super.isTargetPlanetValid(target)) return false;
 		return isDockingCandidate((Planet) target.get());
 	}
-
-	private List<Entity> getTargetPriorityByWeightedDistance(Ship ship, Optional<Entity>[] targets, Map<Optional, Double> weightMap) {
-		return Arrays.stream(targets)
-				.filter(t -> t.isPresent())
-				.map(Optional::get)
-				.sorted(Comparator.comparingDouble(t -> ship.getDistanceTo(t) * weightMap.getOrDefault(t, 1.0)))
-				.collect(Collectors.toList());
-	}
 }
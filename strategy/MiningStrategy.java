@@ -4,7 +4,6 @@ import hlt.*;
 
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 public class MiningStrategy extends AbstractStrategy {
 	private Planet globalTarget = null;
@@ -19,41 +18,39 @@ public class MiningStrategy extends AbstractStrategy {
 		updateTargets();
 		if (globalTarget != null) globalTarget = gameMap.getPlanet(globalTarget.getId()); // update object
 
-		List<Move> moves = gameMap.getMyPlayer().getShips().values().stream()
-				.map(ship -> {
-					Optional<Move> m = avoidCollision(ship);
-					if (avoidCollision(ship).isPresent()) return m.get();
-
-					// Does the ship already have a target? If yes, keep following it
-					Optional<Entity> target = getShipTarget(ship);
-					if (isTargetPlanetValid(target)) {
-						Planet targetPlanet = (Planet) target.get();
-						Log.log(String.format("Ship %s has target planet %s with distance of %s.", ship.getId(), targetPlanet.getId(), ship.getDistanceTo(targetPlanet)));
-						if (ship.canDock(targetPlanet)) {
-							shipTargets.remove(ship.getId());
-							return new DockMove(ship, targetPlanet);
-						}
-						return targetTo(ship, targetPlanet);
-					}
-
-					if (globalTarget == null) {
-						List<Planet> closestEmptyPlanets = findClosestEmptyPlanets(ship);
-						int maxSlots = closestEmptyPlanets.stream()
-								.mapToInt(Planet::getDockingSpots)
-								.max()
-								.getAsInt();
-
-						Planet largestPlanet = closestEmptyPlanets.stream()
-								.filter(p -> p.getDockingSpots() == maxSlots)
-								.findFirst().orElse(null);
-
-						globalTarget = largestPlanet;
-						return targetTo(ship, largestPlanet);
-					}
-
-					return targetTo(ship, globalTarget);
-				})
-				.collect(Collectors.toList());
+		List<Move> moves = planShips(gameMap.getMyPlayer().getShips().values(), ship -> {
+			Optional<Move> m = avoidCollision(ship);
+			if (avoidCollision(ship).isPresent()) return m.get();
+
+			// Does the ship already have a target? If yes, keep following it
+			Optional<Entity> target = getShipTarget(ship);
+			if (isTargetPlanetValid(target)) {
+				Planet targetPlanet = (Planet) target.get();
+				Log.debug(() -> String.format("Ship %s has target planet %s with distance of %s.", ship.getId(), targetPlanet.getId(), ship.getDistanceTo(targetPlanet)));
+				if (ship.canDock(targetPlanet)) {
+					shipTargets.release(ship.getId());
+					return new DockMove(ship, targetPlanet);
+				}
+				return targetTo(ship, targetPlanet);
+			}
+
+			if (globalTarget == null) {
+				List<Planet> closestEmptyPlanets = findClosestEmptyPlanets(ship);
+				int maxSlots = closestEmptyPlanets.stream()
+						.mapToInt(Planet::getDockingSpots)
+						.max()
+						.getAsInt();
+
+				Planet largestPlanet = closestEmptyPlanets.stream()
+						.filter(p -> p.getDockingSpots() == maxSlots)
+						.findFirst().orElse(null);
+
+				globalTarget = largestPlanet;
+				return targetTo(ship, largestPlanet);
+			}
+
+			return targetTo(ship, globalTarget);
+		});
 
 		// Some additional collision avoidance
 		if (turn < 6) {
@@ -85,9 +82,17 @@ public class MiningStrategy extends AbstractStrategy {
 		return modifyAvoidCollisions(moves);
 	}
 
+	@Override
+	protected Entity speculativeTarget(Ship ship) {
+		Entity current = shipTargets.getTarget(ship.getId());
+		if (current instanceof Planet && ship.canDock((Planet) current)) return null;
+		if (current != null) return current;
+		return globalTarget;
+	}
+
 	@Override
 	public boolean keep() {
-		return !globalTarget.isFull();
+		return globalTarget == null || !globalTarget.isFull();
 	}
 
 	@Override
@@ -0,0 +1,166 @@
+package strategy;
+
+import hlt.Entity;
+import hlt.GameMap;
+import hlt.Planet;
+import hlt.Ship;
+import hlt.SpatialIndex;
+import utils.IntObjectMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Distance-ordered neighbours of each ship, split by {@link Kind} and computed at most once per turn.
+ * <p>
+ * The first query for a ship and kind opens a {@link SpatialIndex.DistanceIterator} for that kind;
+ * later queries in the same turn read the entities it already produced and only pull more when they
+ * need to look further out. A query asking for the nearest match therefore stops at the first hit,
+ * and one asking for the whole list sorts the kind once for all callers. The cache is emptied when
+ * the map's {@link hlt.EntityStore#generation()} changes.
+ * <p>
+ * Not thread-safe; meant for the sequential planning pass.
+ */
+public class NeighbourCache {
+	public enum Kind {
+		EMPTY_PLANETS, OWN_PLANETS, ENEMY_SHIPS
+	}
+
+	private static final int KINDS = Kind.values().length;
+
+	private final GameMap gameMap;
+	private final IntObjectMap<Neighbours[]> byShip = new IntObjectMap<>();
+	private int generation = Integer.MIN_VALUE;
+
+	private long turnHits;
+	private long turnMisses;
+	private long turnNanos;
+	private long totalHits;
+	private long totalMisses;
+	private long totalNanos;
+	private long totalSavedNanos;
+
+	public NeighbourCache(GameMap gameMap) {
+		this.gameMap = gameMap;
+	}
+
+	/**
+	 * @return all entities of the kind, nearest first, excluding the ship itself
+	 */
+	public List<Entity> all(Ship ship, Kind kind) {
+		Neighbours neighbours = neighbours(ship, kind);
+		neighbours.get(Integer.MAX_VALUE);
+		return Collections.unmodifiableList(neighbours.found);
+	}
+
+	/**
+	 * @param filter may be null to accept everything
+	 * @return the nearest entity of the kind accepted by the filter, or null
+	 */
+	public Entity first(Ship ship, Kind kind, Predicate<Entity> filter) {
+		Neighbours neighbours = neighbours(ship, kind);
+		for (int i = 0; ; i++) {
+			Entity entity = neighbours.get(i);
+			if (entity == null || filter == null || filter.test(entity)) return entity;
+		}
+	}
+
+	public long getTotalHits() {
+		return totalHits;
+	}
+
+	public long getTotalMisses() {
+		return totalMisses;
+	}
+
+	/**
+	 * Estimated time saved so far: each hit counted at the average cost of the misses in its turn.
+	 */
+	public long getTotalSavedNanos() {
+		return totalSavedNanos;
+	}
+
+	@Override
+	public String toString() {
+		refresh();
+		long queries = turnHits + turnMisses;
+		return String.format("NeighbourCache[turn: %d hits, %d misses (%.1f%%), %d us spent, ~%d us saved; total: %d hits, %d misses, %d us spent, ~%d us saved]",
+				turnHits, turnMisses, queries == 0 ? 0.0 : 100.0 * turnHits / queries, turnNanos / 1000, savedNanos() / 1000,
+				totalHits, totalMisses, totalNanos / 1000, (totalSavedNanos + savedNanos()) / 1000);
+	}
+
+	private Neighbours neighbours(Ship ship, Kind kind) {
+		refresh();
+		Neighbours[] kinds = byShip.get(ship.getId());
+		if (kinds == null) {
+			kinds = new Neighbours[KINDS];
+			byShip.put(ship.getId(), kinds);
+		}
+		Neighbours neighbours = kinds[kind.ordinal()];
+		if (neighbours != null) {
+			turnHits++;
+			totalHits++;
+			return neighbours;
+		}
+		turnMisses++;
+		totalMisses++;
+		long start = System.nanoTime();
+		neighbours = new Neighbours(gameMap.entitiesByDistance(ship, filter(kind)));
+		kinds[kind.ordinal()] = neighbours;
+		addNanos(System.nanoTime() - start);
+		return neighbours;
+	}
+
+	private Predicate<Entity> filter(Kind kind) {
+		int myId = gameMap.getMyPlayerId();
+		switch (kind) {
+			case EMPTY_PLANETS:
+				return e -> e instanceof Planet && !((Planet) e).isOwned();
+			case OWN_PLANETS:
+				return e -> e instanceof Planet && ((Planet) e).isOwned() && e.getOwner() == myId;
+			default:
+				return e -> e instanceof Ship && e.getOwner() != myId;
+		}
+	}
+
+	// Empties the cache when the map has moved on to a new turn.
+	private void refresh() {
+		int current = gameMap.getEntityStore().generation();
+		if (current == generation) return;
+		totalSavedNanos += savedNanos();
+		byShip.clear();
+		generation = current;
+		turnHits = 0;
+		turnMisses = 0;
+		turnNanos = 0;
+	}
+
+	private long savedNanos() {
+		return turnMisses == 0 ? 0 : turnHits * turnNanos / turnMisses;
+	}
+
+	private void addNanos(long nanos) {
+		turnNanos += nanos;
+		totalNanos += nanos;
+	}
+
+	private final class Neighbours {
+		private final SpatialIndex.DistanceIterator iterator;
+		private final List<Entity> found = new ArrayList<>();
+
+		Neighbours(SpatialIndex.DistanceIterator iterator) {
+			this.iterator = iterator;
+		}
+
+		// the neighbour at the given rank, pulling from the iterator as needed, or null if there are fewer
+		Entity get(int index) {
+			if (index < found.size()) return found.get(index);
+			long start = System.nanoTime();
+			while (found.size() <= index && iterator.hasNext()) found.add(iterator.next());
+			addNanos(System.nanoTime() - start);
+			return index < found.size() ? found.get(index) : null;
+		}
+	}
+}
@@ -1,23 +1,49 @@
 package strategy;
 
 import hlt.GameMap;
+import hlt.Log;
 import hlt.Move;
-import utils.RandomUtils;
 
 import java.util.List;
+import java.util.Random;
 
 public class StrategyFactory {
 	public static AbstractStrategy chooseStrategy(GameMap map, List<Move> lastMoves, AbstractStrategy currentStrategy) {
+		return chooseStrategy(map, lastMoves, currentStrategy, StrategyParameters.DEFAULT);
+	}
+
+	public static AbstractStrategy chooseStrategy(GameMap map, List<Move> lastMoves, AbstractStrategy currentStrategy, StrategyParameters parameters) {
+		Random random = null;
+		if (currentStrategy == null) {
+			// -Dbot.seed makes the choice reproducible, e.g. when replaying a recorded game
+			long seed = Long.getLong("bot.seed", System.currentTimeMillis());
+			Log.info(() -> "Strategy seed " + seed + ".");
+			random = new Random(seed);
+		}
+		return chooseStrategy(map, lastMoves, currentStrategy, parameters, random);
+	}
+
+	/**
+	 * @param random the source of the first choice; games played side by side each need their own
+	 */
+	public static AbstractStrategy chooseStrategy(GameMap map, List<Move> lastMoves, AbstractStrategy currentStrategy, StrategyParameters parameters, Random random) {
 		if (currentStrategy == null) {
-			RandomUtils.setSeed(System.currentTimeMillis());
-			if (map.getAllPlayers().size() == 2) return new AggressiveStrategy(map);
-			if (RandomUtils.bernoulli()) return new MiningStrategy(map);
-			return new BalancedStrategy(map);
+			if (map.getAllPlayers().size() == 2) return createStrategy(parameters.getTwoPlayerStrategy(), map, parameters);
+			if (random.nextDouble() < parameters.getMiningChance()) return new MiningStrategy(map);
+			return new BalancedStrategy(map, parameters);
 		}
 
-		if (currentStrategy instanceof AggressiveStrategy && !currentStrategy.keep()) return new BalancedStrategy(map);
-		if (currentStrategy instanceof MiningStrategy && !currentStrategy.keep()) return new BalancedStrategy(map);
+		if (currentStrategy instanceof AggressiveStrategy && !currentStrategy.keep()) return new BalancedStrategy(map, parameters);
+		if (currentStrategy instanceof MiningStrategy && !currentStrategy.keep()) return new BalancedStrategy(map, parameters);
 		return currentStrategy;
 	}
 
+	public static AbstractStrategy createStrategy(String name, GameMap map, StrategyParameters parameters) {
+		switch (name.toLowerCase()) {
+			case "aggressive": return new AggressiveStrategy(map);
+			case "balanced": return new BalancedStrategy(map, parameters);
+			case "mining": return new MiningStrategy(map);
+			default: throw new IllegalArgumentException("Unknown strategy " + name);
+		}
+	}
 }
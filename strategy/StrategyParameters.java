@@ -0,0 +1,130 @@
+package strategy;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Tunable parameters of the strategies and of the choice between them. Instances are immutable;
+ * {@link #with(String, String)} returns a copy with one parameter changed, so configurations for
+ * parameter sweeps can be built from {@link #DEFAULT} by name.
+ */
+public class StrategyParameters {
+	public static final StrategyParameters DEFAULT = new StrategyParameters();
+
+	public static final List<String> NAMES = Arrays.asList("maxOwnDockings", "emptyPlanetWeight", "ownPlanetWeight",
+			"targetedEnemyWeight", "enemyWeight", "twoPlayerStrategy", "miningChance");
+	public static final List<String> STRATEGIES = Arrays.asList("aggressive", "balanced", "mining");
+
+	// BalancedStrategy, see there
+	private int maxOwnDockings = 3;
+	private double emptyPlanetWeight = 1.0;
+	private double ownPlanetWeight = 4.0;
+	private double targetedEnemyWeight = 2.0;
+	private double enemyWeight = 2.5;
+
+	// StrategyFactory: the strategy of 2-player games and the chance of mining in games with more players
+	private String twoPlayerStrategy = "aggressive";
+	private double miningChance = 0.5;
+
+	private StrategyParameters() {
+	}
+
+	private StrategyParameters(StrategyParameters other) {
+		maxOwnDockings = other.maxOwnDockings;
+		emptyPlanetWeight = other.emptyPlanetWeight;
+		ownPlanetWeight = other.ownPlanetWeight;
+		targetedEnemyWeight = other.targetedEnemyWeight;
+		enemyWeight = other.enemyWeight;
+		twoPlayerStrategy = other.twoPlayerStrategy;
+		miningChance = other.miningChance;
+	}
+
+	/**
+	 * @return a copy with the named parameter set to the value; integer parameters round numeric values
+	 */
+	public StrategyParameters with(String name, String value) {
+		StrategyParameters copy = new StrategyParameters(this);
+		switch (name) {
+			case "maxOwnDockings": copy.maxOwnDockings = (int) Math.round(Double.parseDouble(value)); break;
+			case "emptyPlanetWeight": copy.emptyPlanetWeight = Double.parseDouble(value); break;
+			case "ownPlanetWeight": copy.ownPlanetWeight = Double.parseDouble(value); break;
+			case "targetedEnemyWeight": copy.targetedEnemyWeight = Double.parseDouble(value); break;
+			case "enemyWeight": copy.enemyWeight = Double.parseDouble(value); break;
+			case "twoPlayerStrategy":
+				if (!STRATEGIES.contains(value.toLowerCase())) throw new IllegalArgumentException("Unknown strategy " + value);
+				copy.twoPlayerStrategy = value.toLowerCase();
+				break;
+			case "miningChance":
+				copy.miningChance = Double.parseDouble(value);
+				if (copy.miningChance < 0 || copy.miningChance > 1) throw new IllegalArgumentException("miningChance must be within [0, 1]: " + value);
+				break;
+			default: throw new IllegalArgumentException("Unknown parameter " + name + ", expected one of " + NAMES);
+		}
+		return copy;
+	}
+
+	public int getMaxOwnDockings() {
+		return maxOwnDockings;
+	}
+
+	public double getEmptyPlanetWeight() {
+		return emptyPlanetWeight;
+	}
+
+	public double getOwnPlanetWeight() {
+		return ownPlanetWeight;
+	}
+
+	public double getTargetedEnemyWeight() {
+		return targetedEnemyWeight;
+	}
+
+	public double getEnemyWeight() {
+		return enemyWeight;
+	}
+
+	public String getTwoPlayerStrategy() {
+		return twoPlayerStrategy;
+	}
+
+	public double getMiningChance() {
+		return miningChance;
+	}
+
+	/**
+	 * @return the parameters that differ from {@link #DEFAULT}, or "default"
+	 */
+	public String describe() {
+		StringBuilder description = new StringBuilder();
+		if (maxOwnDockings != DEFAULT.maxOwnDockings) description.append(" maxOwnDockings=").append(maxOwnDockings);
+		if (emptyPlanetWeight != DEFAULT.emptyPlanetWeight) description.append(" emptyPlanetWeight=").append(format(emptyPlanetWeight));
+		if (ownPlanetWeight != DEFAULT.ownPlanetWeight) description.append(" ownPlanetWeight=").append(format(ownPlanetWeight));
+		if (targetedEnemyWeight != DEFAULT.targetedEnemyWeight) description.append(" targetedEnemyWeight=").append(format(targetedEnemyWeight));
+		if (enemyWeight != DEFAULT.enemyWeight) description.append(" enemyWeight=").append(format(enemyWeight));
+		if (!twoPlayerStrategy.equals(DEFAULT.twoPlayerStrategy)) description.append(" twoPlayerStrategy=").append(twoPlayerStrategy);
+		if (miningChance != DEFAULT.miningChance) description.append(" miningChance=").append(format(miningChance));
+		return description.length() == 0 ? "default" : description.substring(1);
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.ROOT, "maxOwnDockings=%d emptyPlanetWeight=%s ownPlanetWeight=%s targetedEnemyWeight=%s enemyWeight=%s twoPlayerStrategy=%s miningChance=%s",
+				maxOwnDockings, format(emptyPlanetWeight), format(ownPlanetWeight), format(targetedEnemyWeight), format(enemyWeight),
+				twoPlayerStrategy, format(miningChance));
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof StrategyParameters && toString().equals(o.toString());
+	}
+
+	@Override
+	public int hashCode() {
+		return toString().hashCode();
+	}
+
+	private static String format(double value) {
+		return String.format(Locale.ROOT, "%.3g", value);
+	}
+}
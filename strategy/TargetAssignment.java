@@ -0,0 +1,384 @@
+package strategy;
+
+import hlt.Entity;
+import hlt.Planet;
+import hlt.Ship;
+import utils.IntList;
+import utils.IntObjectMap;
+
+import java.util.Arrays;
+
+/**
+ * Assigns ships to targets for a whole turn at once.
+ * <p>
+ * Targets are the columns of a sparse cost matrix, each with a weight and a capacity. Every ship is
+ * a row listing only its candidate targets, at a cost of distance times the target's weight. Rows
+ * are stored in compressed form in primitive arrays, so building the matrix allocates nothing once
+ * the arrays have grown to the fleet size.
+ * <p>
+ * {@link #solve()} runs a forward auction: a target with capacity c offers c slots, each with its
+ * own price. Unassigned ships bid for the slot that gives them the most benefit (negative cost minus
+ * price), raising its price by the margin over their second-best option plus {@link #EPSILON}, and
+ * outbid ships bid again. Staying without target is always an option, at {@link #UNASSIGNED_FACTOR}
+ * times the costliest candidate of the matrix; a ship whose options are all priced above that gives
+ * up. Starting from zero prices, the result is within {@code ships * EPSILON} of the cheapest
+ * assignment.
+ * <p>
+ * Where more ships want a group of slots than it has, the ships that lose out raise its prices in
+ * steps of epsilon until they give up, which the unassigned cost bounds. To keep such a price war
+ * short, a ship's epsilon doubles every {@link #OUTBIDS_PER_DOUBLING} times it has been outbid, so
+ * ships that compete for the same few slots reach their limit in a logarithmic number of bids, and
+ * only they give up some optimality. With more ships than slots overall, the auction runs in
+ * reverse instead: slots bid for ships, which carry the prices, so there are never more bidders
+ * than objects.
+ * <p>
+ * Prices and assignments carry over to the next turn: each target starts from half its last entry
+ * price, or zero if it had room left, and a ship keeps last turn's target without bidding if that
+ * is still within EPSILON of its best option. A mostly unchanged turn then needs only a few bids,
+ * at the cost of a little optimality.
+ */
+public class TargetAssignment {
+	public static final double EPSILON = 0.5;
+	public static final double UNASSIGNED_FACTOR = 2;
+	public static final int OUTBIDS_PER_DOUBLING = 4;
+	private static final double WARM_PRICE_DECAY = 0.5;
+
+	// columns
+	private Entity[] targets = new Entity[64];
+	private double[] weights = new double[64];
+	private int[] slotStart = new int[65];
+	private int targetCount;
+
+	// rows in compressed form: the candidates of row r are entries [rowStart[r], rowStart[r + 1])
+	private Ship[] ships = new Ship[64];
+	private int[] rowStart = new int[65];
+	private int[] entryColumn = new int[512];
+	private double[] entryCost = new double[512];
+	private int shipCount;
+	private int entryCount;
+
+	// entries of each column, for the reverse auction
+	private int[] columnStart = new int[65];
+	private int[] columnFill = new int[64];
+	private int[] columnEntry = new int[512];
+	private int[] entryRow = new int[512];
+
+	// auction state
+	private double[] slotPrice = new double[64];
+	private int[] slotOwner = new int[64];
+	private int[] slotColumn = new int[64];
+	private int[] assignedSlot = new int[64];
+	private double[] shipPrice = new double[64];
+	// times a ship, or in reverse a slot, was outbid in this solve
+	private int[] shipOutbids = new int[64];
+	private int[] slotOutbids = new int[64];
+	private final IntList unassigned = new IntList();
+	private double unassignedCost;
+
+	// warm start, indexed by entity id
+	private double[] lastPlanetPrice = new double[0];
+	private double[] lastShipPrice = new double[0];
+	// ship id -> target of the last solve
+	private final IntObjectMap<Entity> assignment = new IntObjectMap<>();
+
+	private long lastBids;
+	private int lastWarmStarts;
+	private long lastNanos;
+
+	/** Starts a new matrix; prices and assignments of the last solve are kept for warm starting. */
+	public void clear() {
+		Arrays.fill(targets, 0, targetCount, null);
+		Arrays.fill(ships, 0, shipCount, null);
+		targetCount = 0;
+		shipCount = 0;
+		entryCount = 0;
+		rowStart[0] = 0;
+		slotStart[0] = 0;
+	}
+
+	/**
+	 * @return the column of the new target
+	 */
+	public int addTarget(Entity target, double weight, int capacity) {
+		if (targetCount == targets.length) {
+			int length = targetCount * 2;
+			targets = Arrays.copyOf(targets, length);
+			weights = Arrays.copyOf(weights, length);
+			slotStart = Arrays.copyOf(slotStart, length + 1);
+		}
+		targets[targetCount] = target;
+		weights[targetCount] = weight;
+		slotStart[targetCount + 1] = slotStart[targetCount] + capacity;
+		return targetCount++;
+	}
+
+	/** Starts the row of the next ship; its candidates follow through {@link #addCandidate(int)}. */
+	public void addShip(Ship ship) {
+		if (shipCount == ships.length) {
+			ships = Arrays.copyOf(ships, shipCount * 2);
+			rowStart = Arrays.copyOf(rowStart, shipCount * 2 + 1);
+		}
+		ships[shipCount++] = ship;
+		rowStart[shipCount] = entryCount;
+	}
+
+	public void addCandidate(int column) {
+		if (entryCount == entryColumn.length) {
+			entryColumn = Arrays.copyOf(entryColumn, entryCount * 2);
+			entryCost = Arrays.copyOf(entryCost, entryCount * 2);
+			entryRow = Arrays.copyOf(entryRow, entryCount * 2);
+		}
+		Ship ship = ships[shipCount - 1];
+		entryColumn[entryCount] = column;
+		entryRow[entryCount] = shipCount - 1;
+		entryCost[entryCount] = ship.getDistanceTo(targets[column]) * weights[column];
+		rowStart[shipCount] = ++entryCount;
+	}
+
+	public int getTargetCount() {
+		return targetCount;
+	}
+
+	public int getShipCount() {
+		return shipCount;
+	}
+
+	public void solve() {
+		long start = System.nanoTime();
+		lastBids = 0;
+		lastWarmStarts = 0;
+
+		int slots = slotStart[targetCount];
+		if (slotPrice.length < slots) {
+			slotPrice = new double[Math.max(slots, slotPrice.length * 2)];
+			slotOwner = new int[slotPrice.length];
+			slotColumn = new int[slotPrice.length];
+			slotOutbids = new int[slotPrice.length];
+		}
+		if (assignedSlot.length < shipCount) {
+			assignedSlot = new int[Math.max(shipCount, assignedSlot.length * 2)];
+			shipPrice = new double[assignedSlot.length];
+			shipOutbids = new int[assignedSlot.length];
+		}
+		boolean reverse = shipCount > slots;
+		double maxCost = 0;
+		for (int e = 0; e < entryCount; e++) maxCost = Math.max(maxCost, entryCost[e]);
+		unassignedCost = UNASSIGNED_FACTOR * maxCost + EPSILON;
+		for (int c = 0; c < targetCount; c++) {
+			// a warm price above every cost would shut the target out for all ships
+			Arrays.fill(slotPrice, slotStart[c], slotStart[c + 1], Math.min(lastPrice(targets[c]), maxCost));
+			Arrays.fill(slotColumn, slotStart[c], slotStart[c + 1], c);
+		}
+		Arrays.fill(slotOwner, 0, slots, -1);
+		Arrays.fill(assignedSlot, 0, shipCount, -1);
+		Arrays.fill(slotOutbids, 0, slots, 0);
+		Arrays.fill(shipOutbids, 0, shipCount, 0);
+
+		unassigned.clear();
+		if (reverse) {
+			indexColumns();
+			Arrays.fill(shipPrice, 0, shipCount, 0);
+			for (int s = slots - 1; s >= 0; s--) unassigned.add(s);
+			while (!unassigned.isEmpty()) {
+				reverseBid(unassigned.removeAt(unassigned.size() - 1));
+			}
+		} else {
+			for (int r = shipCount - 1; r >= 0; r--) {
+				if (!warmStart(r)) unassigned.add(r);
+			}
+			while (!unassigned.isEmpty()) {
+				bid(unassigned.removeAt(unassigned.size() - 1));
+			}
+		}
+
+		assignment.clear();
+		for (int r = 0; r < shipCount; r++) {
+			if (assignedSlot[r] >= 0) assignment.put(ships[r].getId(), targets[slotColumn[assignedSlot[r]]]);
+		}
+		for (int c = 0; c < targetCount; c++) {
+			double entryPrice = Double.MAX_VALUE;
+			for (int s = slotStart[c]; s < slotStart[c + 1]; s++) {
+				// a target with room left should not look expensive next turn; reverse auctions price ships, not slots
+				entryPrice = slotOwner[s] < 0 || reverse ? 0 : Math.min(entryPrice, slotPrice[s]);
+				if (entryPrice == 0) break;
+			}
+			if (slotStart[c] < slotStart[c + 1]) storePrice(targets[c], entryPrice * WARM_PRICE_DECAY);
+		}
+		lastNanos = System.nanoTime() - start;
+	}
+
+	/**
+	 * @return the target assigned to the ship by the last {@link #solve()}, or null
+	 */
+	public Entity getTarget(Ship ship) {
+		return assignment.get(ship.getId());
+	}
+
+	public long getLastBids() {
+		return lastBids;
+	}
+
+	public long getLastNanos() {
+		return lastNanos;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("TargetAssignment[ships=%d, targets=%d, candidates=%d, assigned=%d, warm starts=%d, bids=%d, %d us]",
+				shipCount, targetCount, entryCount, assignment.size(), lastWarmStarts, lastBids, lastNanos / 1000);
+	}
+
+	// Keeps last turn's target if it is still a candidate with a free slot and within EPSILON of the best option.
+	private boolean warmStart(int row) {
+		Entity previous = assignment.get(ships[row].getId());
+		if (previous == null) return false;
+		int keepSlot = -1;
+		double keepValue = 0;
+		double best = -unassignedCost;
+		for (int e = rowStart[row]; e < rowStart[row + 1]; e++) {
+			int c = entryColumn[e];
+			int cheapest = cheapestSlot(c, -1);
+			if (cheapest < 0) continue;
+			double value = -entryCost[e] - slotPrice[cheapest];
+			best = Math.max(best, value);
+			if (sameTarget(targets[c], previous)) {
+				int free = cheapestSlot(c, -1, true);
+				if (free >= 0) {
+					keepSlot = free;
+					keepValue = -entryCost[e] - slotPrice[free];
+				}
+			}
+		}
+		if (keepSlot < 0 || keepValue < best - EPSILON) return false;
+		slotOwner[keepSlot] = row;
+		assignedSlot[row] = keepSlot;
+		lastWarmStarts++;
+		return true;
+	}
+
+	private void bid(int row) {
+		int bestSlot = -1;
+		double best = -unassignedCost;
+		double second = -unassignedCost;
+		for (int e = rowStart[row]; e < rowStart[row + 1]; e++) {
+			int c = entryColumn[e];
+			int cheapest = cheapestSlot(c, -1);
+			if (cheapest < 0) continue;
+			double value = -entryCost[e] - slotPrice[cheapest];
+			if (value > best) {
+				second = best;
+				best = value;
+				bestSlot = cheapest;
+				// the same target's next slot competes as well
+				int next = cheapestSlot(c, cheapest);
+				if (next >= 0) second = Math.max(second, -entryCost[e] - slotPrice[next]);
+			} else if (value > second) {
+				second = value;
+			}
+		}
+		if (bestSlot < 0 || best <= -unassignedCost) return;
+
+		lastBids++;
+		slotPrice[bestSlot] += best - second + epsilon(shipOutbids[row]);
+		int outbid = slotOwner[bestSlot];
+		slotOwner[bestSlot] = row;
+		assignedSlot[row] = bestSlot;
+		if (outbid >= 0) {
+			assignedSlot[outbid] = -1;
+			shipOutbids[outbid]++;
+			unassigned.add(outbid);
+		}
+	}
+
+	// The slot bids for the ship that gives it the most benefit; ships are the objects and carry the prices.
+	private void reverseBid(int slot) {
+		int column = slotColumn[slot];
+		int bestRow = -1;
+		double best = -unassignedCost;
+		double second = -unassignedCost;
+		for (int k = columnStart[column]; k < columnStart[column + 1]; k++) {
+			int e = columnEntry[k];
+			int row = entryRow[e];
+			double value = -entryCost[e] - shipPrice[row];
+			if (value > best) {
+				second = best;
+				best = value;
+				bestRow = row;
+			} else if (value > second) {
+				second = value;
+			}
+		}
+		if (bestRow < 0 || best <= -unassignedCost) return;
+
+		lastBids++;
+		shipPrice[bestRow] += best - second + epsilon(slotOutbids[slot]);
+		int outbid = assignedSlot[bestRow];
+		assignedSlot[bestRow] = slot;
+		slotOwner[slot] = bestRow;
+		if (outbid >= 0) {
+			slotOwner[outbid] = -1;
+			slotOutbids[outbid]++;
+			unassigned.add(outbid);
+		}
+	}
+
+	private static double epsilon(int outbids) {
+		return EPSILON * (1L << Math.min(outbids / OUTBIDS_PER_DOUBLING, 40));
+	}
+
+	// Builds the transpose of the rows: the entries of column c are columnEntry[columnStart[c] .. columnStart[c + 1]).
+	private void indexColumns() {
+		if (columnStart.length < targetCount + 1) {
+			columnStart = new int[targets.length + 1];
+			columnFill = new int[targets.length];
+		}
+		if (columnEntry.length < entryCount) columnEntry = new int[entryColumn.length];
+		Arrays.fill(columnStart, 0, targetCount + 1, 0);
+		for (int e = 0; e < entryCount; e++) columnStart[entryColumn[e] + 1]++;
+		for (int c = 0; c < targetCount; c++) columnStart[c + 1] += columnStart[c];
+		System.arraycopy(columnStart, 0, columnFill, 0, targetCount);
+		for (int e = 0; e < entryCount; e++) columnEntry[columnFill[entryColumn[e]]++] = e;
+	}
+
+	private int cheapestSlot(int column, int excluded) {
+		return cheapestSlot(column, excluded, false);
+	}
+
+	private int cheapestSlot(int column, int excluded, boolean freeOnly) {
+		int cheapest = -1;
+		for (int s = slotStart[column]; s < slotStart[column + 1]; s++) {
+			if (s == excluded || (freeOnly && slotOwner[s] >= 0)) continue;
+			if (cheapest < 0 || slotPrice[s] < slotPrice[cheapest]) cheapest = s;
+		}
+		return cheapest;
+	}
+
+	private double lastPrice(Entity target) {
+		double[] prices = target instanceof Planet ? lastPlanetPrice : lastShipPrice;
+		int id = target.getId();
+		return id < prices.length && !Double.isNaN(prices[id]) ? prices[id] : 0;
+	}
+
+	private void storePrice(Entity target, double price) {
+		int id = target.getId();
+		if (target instanceof Planet) {
+			lastPlanetPrice = ensureLength(lastPlanetPrice, id);
+			lastPlanetPrice[id] = price;
+		} else {
+			lastShipPrice = ensureLength(lastShipPrice, id);
+			lastShipPrice[id] = price;
+		}
+	}
+
+	private static double[] ensureLength(double[] prices, int id) {
+		if (id < prices.length) return prices;
+		int length = Math.max(id + 1, prices.length * 2);
+		double[] grown = Arrays.copyOf(prices, length);
+		Arrays.fill(grown, prices.length, length, Double.NaN);
+		return grown;
+	}
+
+	private static boolean sameTarget(Entity a, Entity b) {
+		return a.getId() == b.getId() && (a instanceof Planet) == (b instanceof Planet);
+	}
+}
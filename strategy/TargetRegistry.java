@@ -0,0 +1,141 @@
+package strategy;
+
+import hlt.Entity;
+import hlt.GameMap;
+import hlt.MapChanges;
+import hlt.Planet;
+import utils.IntObjectMap;
+import utils.IntSet;
+
+/**
+ * Which ship follows which target, indexed both ways.
+ * <p>
+ * Next to the target of every ship, each target keeps the set of ships following it, so checking
+ * whether a target is taken and counting its followers are O(1) instead of a scan over all ships.
+ * Targets are stored by id and looked up on the current map when read, so {@link #getTarget(int)}
+ * never returns a stale or dead entity and the registry does not need to be refreshed after an
+ * update. Entities destroyed in an update are dropped through {@link #purge(MapChanges)}, based on
+ * the map's change information.
+ */
+public class TargetRegistry {
+	private final GameMap gameMap;
+
+	// ship id -> target as it was assigned
+	private final IntObjectMap<Entity> targets = new IntObjectMap<>();
+	// target id -> ids of the ships following it; ships and planets have separate id ranges
+	private final IntObjectMap<IntSet> planetFollowers = new IntObjectMap<>();
+	private final IntObjectMap<IntSet> shipFollowers = new IntObjectMap<>();
+
+	public TargetRegistry(GameMap gameMap) {
+		this.gameMap = gameMap;
+	}
+
+	/**
+	 * @return the current state of the ship's target, or null if it has none or the target is gone
+	 */
+	public Entity getTarget(int shipId) {
+		Entity target = targets.get(shipId);
+		return target == null ? null : current(target);
+	}
+
+	public boolean hasTarget(int shipId) {
+		return targets.containsKey(shipId);
+	}
+
+	/**
+	 * Makes the ship follow the target, releasing its previous one.
+	 */
+	public void assign(int shipId, Entity target) {
+		Entity previous = targets.put(shipId, target);
+		if (previous != null && !sameTarget(previous, target)) unfollow(previous, shipId);
+		followers(target, true).add(shipId);
+	}
+
+	public void release(int shipId) {
+		Entity previous = targets.remove(shipId);
+		if (previous != null) unfollow(previous, shipId);
+	}
+
+	public boolean isTargeted(Entity target) {
+		return countFollowers(target) > 0;
+	}
+
+	public int countFollowers(Entity target) {
+		IntSet followers = followers(target, false);
+		return followers == null ? 0 : followers.size();
+	}
+
+	/**
+	 * @return whether the entity is still on the map
+	 */
+	public boolean isAlive(Entity entity) {
+		return current(entity) != null;
+	}
+
+	/**
+	 * Releases the targets of destroyed ships and the followers of destroyed targets.
+	 */
+	public void purge(MapChanges changes) {
+		for (Entity destroyed : changes.getDestroyed()) {
+			if (!(destroyed instanceof Planet)) release(destroyed.getId());
+			IntSet followers = followers(destroyed, false);
+			if (followers == null) continue;
+			for (int i = followers.size() - 1; i >= 0; i--) targets.remove(followers.get(i));
+			(destroyed instanceof Planet ? planetFollowers : shipFollowers).remove(destroyed.getId());
+		}
+	}
+
+	public void clear() {
+		targets.clear();
+		planetFollowers.clear();
+		shipFollowers.clear();
+	}
+
+	/** Number of ships with a target, for iteration through {@link #shipAt(int)} and {@link #targetAt(int)}. */
+	public int size() {
+		return targets.size();
+	}
+
+	public int shipAt(int index) {
+		return targets.keyAt(index);
+	}
+
+	/**
+	 * @return the target as it was assigned, which may be outdated
+	 */
+	public Entity targetAt(int index) {
+		return targets.valueAt(index);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("TargetRegistry[ships=%d, planets targeted=%d, ships targeted=%d]",
+				targets.size(), planetFollowers.size(), shipFollowers.size());
+	}
+
+	private Entity current(Entity target) {
+		return target instanceof Planet ? gameMap.getPlanet(target.getId()) : gameMap.getShip(target.getId());
+	}
+
+	private IntSet followers(Entity target, boolean create) {
+		IntObjectMap<IntSet> index = target instanceof Planet ? planetFollowers : shipFollowers;
+		IntSet followers = index.get(target.getId());
+		if (followers == null && create) {
+			followers = new IntSet(4);
+			index.put(target.getId(), followers);
+		}
+		return followers;
+	}
+
+	private void unfollow(Entity target, int shipId) {
+		IntObjectMap<IntSet> index = target instanceof Planet ? planetFollowers : shipFollowers;
+		IntSet followers = index.get(target.getId());
+		if (followers == null) return;
+		followers.remove(shipId);
+		if (followers.isEmpty()) index.remove(target.getId());
+	}
+
+	private static boolean sameTarget(Entity a, Entity b) {
+		return a.getId() == b.getId() && (a instanceof Planet) == (b instanceof Planet);
+	}
+}
@@ -0,0 +1,65 @@
+package strategy;
+
+import hlt.Entity;
+import hlt.Planet;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread-safe claims of target entities by ships.
+ * <p>
+ * Every target counts its claims atomically, so planning threads can race for a target with a
+ * limited number of slots and at most that many win. A ship holds at most one claim; claiming a new
+ * target releases the previous one.
+ */
+public class TargetReservations {
+	private final ConcurrentHashMap<Long, AtomicInteger> claims = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<Integer, Long> claimedBy = new ConcurrentHashMap<>();
+
+	/**
+	 * Claims the target for the ship unless it already has capacity claims.
+	 *
+	 * @return whether the claim succeeded
+	 */
+	public boolean claim(int shipId, Entity target, int capacity) {
+		long key = key(target);
+		AtomicInteger count = claims.computeIfAbsent(key, k -> new AtomicInteger());
+		while (true) {
+			int current = count.get();
+			if (current >= capacity) return false;
+			if (count.compareAndSet(current, current + 1)) break;
+		}
+		Long previous = claimedBy.put(shipId, key);
+		if (previous != null) count(previous).decrementAndGet();
+		return true;
+	}
+
+	public void release(int shipId) {
+		Long key = claimedBy.remove(shipId);
+		if (key != null) count(key).decrementAndGet();
+	}
+
+	public int claims(Entity target) {
+		AtomicInteger count = claims.get(key(target));
+		return count == null ? 0 : count.get();
+	}
+
+	public boolean isClaimed(Entity target) {
+		return claims(target) > 0;
+	}
+
+	public void clear() {
+		claims.clear();
+		claimedBy.clear();
+	}
+
+	private AtomicInteger count(long key) {
+		return claims.computeIfAbsent(key, k -> new AtomicInteger());
+	}
+
+	// ships and planets have separate id ranges
+	private static long key(Entity target) {
+		return ((target instanceof Planet ? 1L : 0L) << 32) | (target.getId() & 0xFFFFFFFFL);
+	}
+}
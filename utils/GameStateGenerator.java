@@ -0,0 +1,320 @@
+package utils;
+
+import hlt.Constants;
+import hlt.FrameParser;
+import hlt.GameMap;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates game states in the engine's frame format, for benchmarks and experiments at sizes that
+ * rarely occur in real games.
+ * <p>
+ * Planets of varying size are spread over the map without overlapping. Every player gets a fleet
+ * clustered around a home position, with no ship overlapping another ship or a planet. Some planets
+ * near a home are owned by that player, with ships docked, docking or undocking at them that match
+ * the planet's docked ship list.
+ * <p>
+ * The layout depends on the seed only, drawn from a random source of the generator's own, so the
+ * same seed gives the same frames on every machine, also with generators running on other threads.
+ * Later turns let each undocked fleet drift towards the map center as a whole. Planets have a
+ * handful of docking spots each, so fleets that are large compared to the planets have fewer docked
+ * ships than asked for.
+ */
+public class GameStateGenerator {
+	private static final int MAX_ATTEMPTS = 100;
+	private static final double PLANET_MARGIN = 3.0;
+	private static final double DRIFT_PER_TURN = 0.5;
+
+	private final long seed;
+	private final Random random;
+	private final int players;
+	private final int width;
+	private final int height;
+
+	private final double[] planetX;
+	private final double[] planetY;
+	private final double[] planetRadius;
+	private final int[] planetSpots;
+	private final int[] planetOwner;
+	private final List<IntList> planetDocked = new ArrayList<>();
+
+	private final IntList shipOwner = new IntList();
+	private final List<double[]> shipPosition = new ArrayList<>();
+	private final IntList shipStatus = new IntList();
+	private final IntList shipPlanet = new IntList();
+	private final IntList shipProgress = new IntList();
+	private final IntList shipHealth = new IntList();
+
+	private final double[] driftX;
+	private final double[] driftY;
+
+	// occupied unit cells of the ships placed so far, to reject overlaps
+	private final IntObjectMap<IntList> shipCells = new IntObjectMap<>();
+
+	/**
+	 * @param dockedFraction share of each fleet that is docked, docking or undocking, as far as the planets near its home have spots
+	 */
+	public GameStateGenerator(long seed, int players, int shipsPerPlayer, int planets, int width, int height, double dockedFraction) {
+		this.seed = seed;
+		this.players = players;
+		this.width = width;
+		this.height = height;
+		random = new Random(seed);
+
+		planetX = new double[planets];
+		planetY = new double[planets];
+		planetRadius = new double[planets];
+		planetSpots = new int[planets];
+		planetOwner = new int[planets];
+		placePlanets();
+
+		driftX = new double[players];
+		driftY = new double[players];
+		for (int player = 0; player < players; player++) {
+			double angle = 2 * Math.PI * (player + 0.5) / players;
+			double homeX = width / 2.0 + Math.cos(angle) * width * 0.3;
+			double homeY = height / 2.0 + Math.sin(angle) * height * 0.3;
+			double distance = Math.hypot(width / 2.0 - homeX, height / 2.0 - homeY);
+			driftX[player] = (width / 2.0 - homeX) / distance * DRIFT_PER_TURN;
+			driftY[player] = (height / 2.0 - homeY) / distance * DRIFT_PER_TURN;
+
+			int docked = dockShips(player, homeX, homeY, (int) Math.round(shipsPerPlayer * dockedFraction));
+			placeFleet(player, homeX, homeY, shipsPerPlayer - docked);
+		}
+	}
+
+	/**
+	 * 4 players with 24 planets and a fifth of every fleet docked.
+	 */
+	public GameStateGenerator(long seed, int shipsPerPlayer, int width, int height) {
+		this(seed, Constants.MAX_PLAYERS, shipsPerPlayer, 24, width, height, 0.2);
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getShipCount() {
+		return shipOwner.size();
+	}
+
+	/**
+	 * @return the frame of the given turn, without line terminator; turn 0 is the generated layout
+	 */
+	public String frame(int turn) {
+		List<double[]> positions = positions(turn);
+		StringBuilder frame = new StringBuilder(64 + 48 * shipOwner.size() + 64 * planetX.length);
+		frame.append(players);
+		for (int player = 0; player < players; player++) {
+			int count = 0;
+			for (int s = 0; s < shipOwner.size(); s++) if (shipOwner.get(s) == player) count++;
+			frame.append(' ').append(player).append(' ').append(count);
+			for (int s = 0; s < shipOwner.size(); s++) {
+				if (shipOwner.get(s) != player) continue;
+				double[] position = positions.get(s);
+				frame.append(' ').append(s).append(' ').append(format(position[0])).append(' ').append(format(position[1]))
+						.append(' ').append(shipHealth.get(s)).append(" 0 0 ").append(shipStatus.get(s))
+						.append(' ').append(shipPlanet.get(s)).append(' ').append(shipProgress.get(s)).append(" 0");
+			}
+		}
+		frame.append(' ').append(planetX.length);
+		for (int p = 0; p < planetX.length; p++) {
+			IntList docked = planetDocked.get(p);
+			int production = planetOwner[p] >= 0 ? Constants.BASE_PRODUCTIVITY * docked.size() : 0;
+			frame.append(' ').append(p).append(' ').append(format(planetX[p])).append(' ').append(format(planetY[p]))
+					.append(' ').append(Math.round(planetRadius[p] * 255)).append(' ').append(format(planetRadius[p]))
+					.append(' ').append(planetSpots[p]).append(' ').append(production)
+					.append(' ').append(Math.round(planetRadius[p] * 100))
+					.append(' ').append(planetOwner[p] >= 0 ? 1 : 0).append(' ').append(Math.max(0, planetOwner[p]))
+					.append(' ').append(docked.size());
+			for (int i = 0; i < docked.size(); i++) frame.append(' ').append(docked.get(i));
+		}
+		return frame.toString();
+	}
+
+	public byte[][] frames(int turns) {
+		byte[][] frames = new byte[turns][];
+		for (int turn = 0; turn < turns; turn++) frames[turn] = frame(turn).getBytes(StandardCharsets.US_ASCII);
+		return frames;
+	}
+
+	/**
+	 * @return the engine's input for the given player: its id, the map size, then one frame per turn
+	 */
+	public String input(int myId, int turns) {
+		StringBuilder input = new StringBuilder().append(myId).append('\n').append(width).append(' ').append(height).append('\n');
+		for (int turn = 0; turn < turns; turn++) input.append(frame(turn)).append('\n');
+		return input.toString();
+	}
+
+	/**
+	 * @return a map as seen by the given player, updated with the frame of the given turn
+	 */
+	public GameMap map(int myId, int turn) {
+		byte[] frame = frame(turn).getBytes(StandardCharsets.US_ASCII);
+		GameMap gameMap = new GameMap(width, height, myId);
+		gameMap.updateMap(new FrameParser().reset(frame, frame.length));
+		return gameMap;
+	}
+
+	private void placePlanets() {
+		double maxRadius = Math.max(4, Math.min(width, height) / 20.0);
+		for (int p = 0; p < planetX.length; p++) {
+			double radius = 0;
+			for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+				radius = uniform(3.0, maxRadius);
+				planetX[p] = uniform(radius + PLANET_MARGIN, width - radius - PLANET_MARGIN);
+				planetY[p] = uniform(radius + PLANET_MARGIN, height - radius - PLANET_MARGIN);
+				if (!overlapsPlanet(planetX[p], planetY[p], radius + PLANET_MARGIN, p)) break;
+				if (attempt == MAX_ATTEMPTS - 1) throw new IllegalArgumentException("No room for " + planetX.length + " planets");
+			}
+			planetRadius[p] = radius;
+			planetSpots[p] = Math.max(2, Math.min(6, (int) (radius / 2)));
+			planetOwner[p] = -1;
+			planetDocked.add(new IntList());
+		}
+	}
+
+	// Docks up to the given number of ships at unowned planets closest to home, and returns how many it placed.
+	private int dockShips(int player, double homeX, double homeY, int ships) {
+		int placed = 0;
+		while (placed < ships) {
+			int planet = -1;
+			for (int p = 0; p < planetX.length; p++) {
+				if (planetOwner[p] >= 0) continue;
+				if (planet < 0 || Math.hypot(planetX[p] - homeX, planetY[p] - homeY) < Math.hypot(planetX[planet] - homeX, planetY[planet] - homeY)) planet = p;
+			}
+			if (planet < 0) break;
+			planetOwner[planet] = player;
+			int spots = Math.min(planetSpots[planet], ships - placed);
+			for (int spot = 0; spot < spots; spot++) {
+				double angle = 2 * Math.PI * spot / planetSpots[planet] + uniform(0.0, 0.2);
+				double distance = planetRadius[planet] + Constants.SHIP_RADIUS + uniform(0.5, 1.5);
+				double x = planetX[planet] + Math.cos(angle) * distance;
+				double y = planetY[planet] + Math.sin(angle) * distance;
+				if (x < 1 || y < 1 || x > width - 1 || y > height - 1 || overlapsShip(shipCells, shipPosition, x, y)) continue;
+				// docking, docked and undocking in the ratio 2:7:1
+				double draw = random.nextDouble();
+				int status = draw < 0.2 ? 1 : draw < 0.9 ? 2 : 3;
+				int id = addShip(player, x, y, status, planet, status == 2 ? 0 : 1 + random.nextInt(Constants.DOCK_TURNS - 1));
+				planetDocked.get(planet).add(id);
+				placed++;
+			}
+		}
+		return placed;
+	}
+
+	private void placeFleet(int player, double homeX, double homeY, int ships) {
+		double spread = Math.min(width, height) / 12.0;
+		for (int s = 0; s < ships; s++) {
+			for (int attempt = 0; ; attempt++) {
+				// crowded fleets spread out further
+				double sigma = spread * (1 + attempt / 10.0);
+				double x = homeX + sigma * random.nextGaussian();
+				double y = homeY + sigma * random.nextGaussian();
+				if (x < 1 || y < 1 || x > width - 1 || y > height - 1) continue;
+				if (overlapsPlanet(x, y, Constants.SHIP_RADIUS + 0.5, planetX.length) || overlapsShip(shipCells, shipPosition, x, y)) continue;
+				addShip(player, x, y, 0, 0, 0);
+				break;
+			}
+		}
+	}
+
+	private int addShip(int player, double x, double y, int status, int planet, int progress) {
+		int id = shipOwner.size();
+		shipOwner.add(player);
+		shipPosition.add(new double[] {x, y});
+		shipStatus.add(status);
+		shipPlanet.add(planet);
+		shipProgress.add(progress);
+		shipHealth.add(random.nextDouble() < 0.8 ? Constants.MAX_SHIP_HEALTH : Constants.WEAPON_DAMAGE + random.nextInt(Constants.MAX_SHIP_HEALTH - Constants.WEAPON_DAMAGE));
+		occupy(shipCells, shipPosition, id);
+		return id;
+	}
+
+	private void occupy(IntObjectMap<IntList> cells, List<double[]> positions, int ship) {
+		int cell = cell(positions.get(ship)[0], positions.get(ship)[1]);
+		IntList occupants = cells.get(cell);
+		if (occupants == null) cells.put(cell, occupants = new IntList());
+		occupants.add(ship);
+	}
+
+	// Fleets drift rigidly; a ship whose drifted position is taken keeps its layout position, or is
+	// nudged to a free spot nearby, so no frame has overlapping entities.
+	private List<double[]> positions(int turn) {
+		if (turn == 0) return shipPosition;
+		// a source per turn, so a frame does not depend on which frames were asked for before it
+		Random nudge = new Random(seed + turn);
+		IntObjectMap<IntList> cells = new IntObjectMap<>();
+		List<double[]> positions = new ArrayList<>(shipPosition);
+		for (int s = 0; s < positions.size(); s++) if (shipStatus.get(s) != 0) occupy(cells, positions, s);
+		for (int s = 0; s < positions.size(); s++) {
+			if (shipStatus.get(s) != 0) continue;
+			double[] start = shipPosition.get(s);
+			int player = shipOwner.get(s);
+			double[] position = new double[] {start[0] + driftX[player] * turn, start[1] + driftY[player] * turn};
+			for (int attempt = 0; !isFree(cells, positions, position[0], position[1]); attempt++) {
+				position = attempt == 0 ? start : new double[] {start[0] + attempt / 10.0 * nudge.nextGaussian(), start[1] + attempt / 10.0 * nudge.nextGaussian()};
+			}
+			positions.set(s, position);
+			occupy(cells, positions, s);
+		}
+		return positions;
+	}
+
+	private double uniform(double from, double to) {
+		if (!(from < to)) throw new IllegalArgumentException("Invalid range: [" + from + ", " + to + ")");
+		return from + random.nextDouble() * (to - from);
+	}
+
+	private boolean isFree(IntObjectMap<IntList> cells, List<double[]> positions, double x, double y) {
+		if (x < 1 || y < 1 || x > width - 1 || y > height - 1) return false;
+		return !overlapsPlanet(x, y, Constants.SHIP_RADIUS + 0.5, planetX.length) && !overlapsShip(cells, positions, x, y);
+	}
+
+	private boolean overlapsPlanet(double x, double y, double radius, int planets) {
+		for (int p = 0; p < planets; p++) {
+			double reach = planetRadius[p] + radius;
+			if ((x - planetX[p]) * (x - planetX[p]) + (y - planetY[p]) * (y - planetY[p]) < reach * reach) return true;
+		}
+		return false;
+	}
+
+	private boolean overlapsShip(IntObjectMap<IntList> cells, List<double[]> positions, double x, double y) {
+		int column = (int) x;
+		int row = (int) y;
+		double reach = 2 * Constants.SHIP_RADIUS;
+		for (int c = column - 1; c <= column + 1; c++) {
+			for (int r = row - 1; r <= row + 1; r++) {
+				IntList occupants = cells.get(r * (width + 2) + c + 1);
+				if (occupants == null) continue;
+				for (int i = 0; i < occupants.size(); i++) {
+					double[] other = positions.get(occupants.get(i));
+					if ((x - other[0]) * (x - other[0]) + (y - other[1]) * (y - other[1]) < reach * reach) return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private int cell(double x, double y) {
+		return (int) y * (width + 2) + (int) x + 1;
+	}
+
+	private static String format(double value) {
+		return String.format(Locale.ROOT, "%.4f", value);
+	}
+}
@@ -0,0 +1,123 @@
+package utils;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Growable list of primitive {@code int}s.
+ * <p>
+ * {@link #asList()} offers a read-only {@link List} view that only boxes on access.
+ */
+public class IntList {
+
+	private int[] elements;
+	private int size;
+	private List<Integer> listView;
+
+	public IntList() {
+		this(8);
+	}
+
+	public IntList(int initialCapacity) {
+		elements = new int[Math.max(1, initialCapacity)];
+	}
+
+	public IntList(IntList other) {
+		elements = Arrays.copyOf(other.elements, Math.max(1, other.size));
+		size = other.size;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int get(int index) {
+		if (index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		return elements[index];
+	}
+
+	public void set(int index, int value) {
+		if (index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		elements[index] = value;
+	}
+
+	public void add(int value) {
+		if (size == elements.length) elements = Arrays.copyOf(elements, size * 2);
+		elements[size++] = value;
+	}
+
+	public int removeAt(int index) {
+		int value = get(index);
+		System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+		size--;
+		return value;
+	}
+
+	/**
+	 * Removes the first occurrence of the value.
+	 *
+	 * @return true if the value was present
+	 */
+	public boolean removeValue(int value) {
+		int index = indexOf(value);
+		if (index < 0) return false;
+		removeAt(index);
+		return true;
+	}
+
+	public int indexOf(int value) {
+		for (int i = 0; i < size; i++) {
+			if (elements[i] == value) return i;
+		}
+		return -1;
+	}
+
+	public boolean contains(int value) {
+		return indexOf(value) >= 0;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	public boolean contentEquals(IntList other) {
+		if (other.size != size) return false;
+		for (int i = 0; i < size; i++) {
+			if (elements[i] != other.elements[i]) return false;
+		}
+		return true;
+	}
+
+	public List<Integer> asList() {
+		if (listView == null) listView = new ListView();
+		return listView;
+	}
+
+	@Override
+	public String toString() {
+		return asList().toString();
+	}
+
+	private final class ListView extends AbstractList<Integer> implements RandomAccess {
+		@Override
+		public Integer get(int index) {
+			return IntList.this.get(index);
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return o instanceof Integer && IntList.this.contains((Integer) o);
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+}
@@ -0,0 +1,387 @@
+package utils;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Map from primitive {@code int} keys to objects.
+ * <p>
+ * Entries are kept in dense arrays sorted by key, and an open-addressing hash table with linear
+ * probing maps keys to their dense index. Lookups are O(1) and never box, and iteration is in
+ * ascending key order, like the {@code TreeMap}s this replaces. Appending a key larger than all
+ * others is O(1); inserting or removing in the middle shifts the dense arrays and rebuilds the
+ * table, which is fine for entity ids since the engine hands them out in increasing order. Removing
+ * many entries at once goes through {@link #removeKeys(IntPredicate, Consumer)}, which compacts and
+ * rebuilds only once.
+ * <p>
+ * Iterate without allocating through {@link #size()}, {@link #keyAt(int)} and {@link #valueAt(int)}.
+ * {@link #asMap()} offers a read-only {@link Map} view for code that expects one.
+ */
+public class IntObjectMap<V> {
+
+	private static final int FREE = 0;
+
+	private int[] keys;
+	private Object[] values;
+	private int size;
+
+	// dense index + 1, FREE for empty buckets
+	private int[] table;
+	private int mask;
+
+	private Map<Integer, V> mapView;
+
+	public IntObjectMap() {
+		this(16);
+	}
+
+	public IntObjectMap(int expectedSize) {
+		int capacity = Math.max(4, expectedSize);
+		keys = new int[capacity];
+		values = new Object[capacity];
+		allocateTable(tableSizeFor(capacity));
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int keyAt(int index) {
+		return keys[index];
+	}
+
+	@SuppressWarnings("unchecked")
+	public V valueAt(int index) {
+		return (V) values[index];
+	}
+
+	public void setValueAt(int index, V value) {
+		values[index] = value;
+	}
+
+	/**
+	 * Returns the dense index of the key, or -1 if it is absent.
+	 */
+	public int indexOf(int key) {
+		int bucket = findBucket(key);
+		return bucket < 0 ? -1 : table[bucket] - 1;
+	}
+
+	public boolean containsKey(int key) {
+		return findBucket(key) >= 0;
+	}
+
+	/**
+	 * Linear scan, like {@link Map#containsValue(Object)}.
+	 */
+	public boolean containsValue(Object value) {
+		for (int i = 0; i < size; i++) {
+			if (value == null ? values[i] == null : value.equals(values[i])) return true;
+		}
+		return false;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		int bucket = findBucket(key);
+		return bucket < 0 ? null : (V) values[table[bucket] - 1];
+	}
+
+	public V getOrDefault(int key, V defaultValue) {
+		int bucket = findBucket(key);
+		return bucket < 0 ? defaultValue : valueAt(table[bucket] - 1);
+	}
+
+	public V put(int key, V value) {
+		int bucket = findBucket(key);
+		if (bucket >= 0) {
+			int index = table[bucket] - 1;
+			V previous = valueAt(index);
+			values[index] = value;
+			return previous;
+		}
+
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, size * 2);
+			values = Arrays.copyOf(values, size * 2);
+		}
+
+		if (size == 0 || keys[size - 1] < key) {
+			keys[size] = key;
+			values[size] = value;
+			size++;
+			if (size * 2 > table.length) {
+				allocateTable(table.length * 2);
+				rebuildTable();
+			} else {
+				table[-bucket - 1] = size;
+			}
+			return null;
+		}
+
+		int position = -Arrays.binarySearch(keys, 0, size, key) - 1;
+		System.arraycopy(keys, position, keys, position + 1, size - position);
+		System.arraycopy(values, position, values, position + 1, size - position);
+		keys[position] = key;
+		values[position] = value;
+		size++;
+		if (size * 2 > table.length) allocateTable(table.length * 2);
+		rebuildTable();
+		return null;
+	}
+
+	public V remove(int key) {
+		int bucket = findBucket(key);
+		if (bucket < 0) return null;
+		return removeIndex(table[bucket] - 1, bucket);
+	}
+
+	public V removeAt(int index) {
+		return removeIndex(index, findBucket(keys[index]));
+	}
+
+	/**
+	 * Removes every entry whose key matches the filter in one pass over the dense arrays and a single
+	 * table rebuild. Removed values are handed to the consumer, if any, in ascending key order; it
+	 * must not touch this map.
+	 *
+	 * @return the number of removed entries
+	 */
+	public int removeKeys(IntPredicate filter, Consumer<? super V> removed) {
+		int kept = 0;
+		for (int i = 0; i < size; i++) {
+			if (filter.test(keys[i])) {
+				if (removed != null) removed.accept(valueAt(i));
+				continue;
+			}
+			keys[kept] = keys[i];
+			values[kept] = values[i];
+			kept++;
+		}
+		int count = size - kept;
+		if (count == 0) return 0;
+		Arrays.fill(values, kept, size, null);
+		size = kept;
+		rebuildTable();
+		return count;
+	}
+
+	public void clear() {
+		Arrays.fill(values, 0, size, null);
+		Arrays.fill(table, FREE);
+		size = 0;
+	}
+
+	/**
+	 * Returns a read-only {@link Map} view backed by this map.
+	 */
+	public Map<Integer, V> asMap() {
+		if (mapView == null) mapView = new MapView();
+		return mapView;
+	}
+
+	@Override
+	public String toString() {
+		return asMap().toString();
+	}
+
+	private V removeIndex(int index, int bucket) {
+		V previous = valueAt(index);
+		if (index == size - 1) {
+			deleteBucket(bucket);
+			size--;
+			values[size] = null;
+			return previous;
+		}
+
+		System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+		System.arraycopy(values, index + 1, values, index, size - index - 1);
+		size--;
+		values[size] = null;
+		rebuildTable();
+		return previous;
+	}
+
+	// Returns the bucket holding the key, or -(free bucket + 1) where it would go.
+	private int findBucket(int key) {
+		int bucket = hash(key) & mask;
+		while (true) {
+			int entry = table[bucket];
+			if (entry == FREE) return -bucket - 1;
+			if (keys[entry - 1] == key) return bucket;
+			bucket = (bucket + 1) & mask;
+		}
+	}
+
+	// Backward-shift deletion keeps probe sequences intact without tombstones.
+	private void deleteBucket(int bucket) {
+		int hole = bucket;
+		int next = bucket;
+		while (true) {
+			next = (next + 1) & mask;
+			int entry = table[next];
+			if (entry == FREE) break;
+			int home = hash(keys[entry - 1]) & mask;
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				table[hole] = entry;
+				hole = next;
+			}
+		}
+		table[hole] = FREE;
+	}
+
+	private void rebuildTable() {
+		Arrays.fill(table, FREE);
+		for (int i = 0; i < size; i++) {
+			int bucket = hash(keys[i]) & mask;
+			while (table[bucket] != FREE) bucket = (bucket + 1) & mask;
+			table[bucket] = i + 1;
+		}
+	}
+
+	private void allocateTable(int capacity) {
+		table = new int[capacity];
+		mask = capacity - 1;
+	}
+
+	static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	static int tableSizeFor(int expectedSize) {
+		int capacity = 8;
+		while (capacity < expectedSize * 2) capacity <<= 1;
+		return capacity;
+	}
+
+	private final class MapView extends AbstractMap<Integer, V> {
+		private Set<Entry<Integer, V>> entrySet;
+		private Set<Integer> keySet;
+		private Collection<V> valueCollection;
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return key instanceof Integer && IntObjectMap.this.containsKey((Integer) key);
+		}
+
+		@Override
+		public boolean containsValue(Object value) {
+			return IntObjectMap.this.containsValue(value);
+		}
+
+		@Override
+		public V get(Object key) {
+			return key instanceof Integer ? IntObjectMap.this.get((Integer) key) : null;
+		}
+
+		@Override
+		public Set<Entry<Integer, V>> entrySet() {
+			if (entrySet == null) {
+				entrySet = new AbstractSet<Entry<Integer, V>>() {
+					@Override
+					public Iterator<Entry<Integer, V>> iterator() {
+						return new IndexIterator<Entry<Integer, V>>() {
+							@Override
+							Entry<Integer, V> at(int index) {
+								return new SimpleImmutableEntry<>(keys[index], valueAt(index));
+							}
+						};
+					}
+
+					@Override
+					public int size() {
+						return size;
+					}
+				};
+			}
+			return entrySet;
+		}
+
+		@Override
+		public Set<Integer> keySet() {
+			if (keySet == null) {
+				keySet = new AbstractSet<Integer>() {
+					@Override
+					public Iterator<Integer> iterator() {
+						return new IndexIterator<Integer>() {
+							@Override
+							Integer at(int index) {
+								return keys[index];
+							}
+						};
+					}
+
+					@Override
+					public boolean contains(Object key) {
+						return containsKey(key);
+					}
+
+					@Override
+					public int size() {
+						return size;
+					}
+				};
+			}
+			return keySet;
+		}
+
+		@Override
+		public Collection<V> values() {
+			if (valueCollection == null) {
+				valueCollection = new AbstractCollection<V>() {
+					@Override
+					public Iterator<V> iterator() {
+						return new IndexIterator<V>() {
+							@Override
+							V at(int index) {
+								return valueAt(index);
+							}
+						};
+					}
+
+					@Override
+					public int size() {
+						return size;
+					}
+				};
+			}
+			return valueCollection;
+		}
+	}
+
+	private abstract class IndexIterator<T> implements Iterator<T> {
+		private int next = 0;
+
+		abstract T at(int index);
+
+		@Override
+		public boolean hasNext() {
+			return next < size;
+		}
+
+		@Override
+		public T next() {
+			if (next >= size) throw new NoSuchElementException();
+			return at(next++);
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * Set of primitive {@code int}s with O(1) add, remove and contains that never box.
+ * <p>
+ * Members are kept in a dense array, which an open-addressing hash table indexes. Removal moves
+ * the last member into the freed position, so iteration order is not stable across removals.
+ * Iterate without allocating through {@link #size()} and {@link #get(int)}.
+ */
+public class IntSet {
+
+	private static final int FREE = 0;
+
+	private int[] members;
+	private int size;
+
+	// dense index + 1, FREE for empty buckets
+	private int[] table;
+	private int mask;
+
+	public IntSet() {
+		this(16);
+	}
+
+	public IntSet(int expectedSize) {
+		members = new int[Math.max(4, expectedSize)];
+		allocateTable(IntObjectMap.tableSizeFor(members.length));
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int get(int index) {
+		return members[index];
+	}
+
+	public boolean contains(int value) {
+		return findBucket(value) >= 0;
+	}
+
+	/**
+	 * @return true if the value was not yet a member
+	 */
+	public boolean add(int value) {
+		int bucket = findBucket(value);
+		if (bucket >= 0) return false;
+
+		if (size == members.length) members = Arrays.copyOf(members, size * 2);
+		members[size++] = value;
+		if (size * 2 > table.length) {
+			allocateTable(table.length * 2);
+			for (int i = 0; i < size; i++) insert(i);
+		} else {
+			table[-bucket - 1] = size;
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if the value was a member
+	 */
+	public boolean remove(int value) {
+		int bucket = findBucket(value);
+		if (bucket < 0) return false;
+
+		int index = table[bucket] - 1;
+		deleteBucket(bucket);
+		size--;
+		if (index != size) {
+			int moved = members[size];
+			members[index] = moved;
+			table[findBucket(moved)] = index + 1;
+		}
+		return true;
+	}
+
+	public void clear() {
+		Arrays.fill(table, FREE);
+		size = 0;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("[");
+		for (int i = 0; i < size; i++) {
+			if (i > 0) builder.append(", ");
+			builder.append(members[i]);
+		}
+		return builder.append(']').toString();
+	}
+
+	// Returns the bucket holding the value, or -(free bucket + 1) where it would go.
+	private int findBucket(int value) {
+		int bucket = IntObjectMap.hash(value) & mask;
+		while (true) {
+			int entry = table[bucket];
+			if (entry == FREE) return -bucket - 1;
+			if (members[entry - 1] == value) return bucket;
+			bucket = (bucket + 1) & mask;
+		}
+	}
+
+	private void deleteBucket(int bucket) {
+		int hole = bucket;
+		int next = bucket;
+		while (true) {
+			next = (next + 1) & mask;
+			int entry = table[next];
+			if (entry == FREE) break;
+			int home = IntObjectMap.hash(members[entry - 1]) & mask;
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				table[hole] = entry;
+				hole = next;
+			}
+		}
+		table[hole] = FREE;
+	}
+
+	private void insert(int index) {
+		int bucket = IntObjectMap.hash(members[index]) & mask;
+		while (table[bucket] != FREE) bucket = (bucket + 1) & mask;
+		table[bucket] = index + 1;
+	}
+
+	private void allocateTable(int capacity) {
+		table = new int[capacity];
+		mask = capacity - 1;
+	}
+}